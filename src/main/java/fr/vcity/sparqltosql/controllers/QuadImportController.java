@@ -33,9 +33,11 @@ public class QuadImportController {
     @PostMapping(value = "/add")
     void importModelAdd(
             @Parameter(description = "The file list containing all the triple/quads to import as valid in a new version", name = "files")
-            @RequestParam("files") List<MultipartFile> files
+            @RequestParam("files") List<MultipartFile> files,
+            @Parameter(description = "Loads the quads with the PostgreSQL COPY bulk mode (faster for initial loads and very large versions)", name = "bulk")
+            @RequestParam(value = "bulk", defaultValue = "false") boolean bulk
     ) {
-        quadImportService.importModelToAdd(files);
+        quadImportService.importModelToAdd(files, bulk);
     }
 
     @Operation(
@@ -49,9 +51,11 @@ public class QuadImportController {
     @PostMapping(value = "/remove")
     void importModelRemove(
             @Parameter(description = "The file list containing all the triple/quads to import as invalid in a new version", name = "files")
-            @RequestParam("files") List<MultipartFile> files
+            @RequestParam("files") List<MultipartFile> files,
+            @Parameter(description = "Loads the quads with the PostgreSQL COPY bulk mode (faster for initial loads and very large versions)", name = "bulk")
+            @RequestParam(value = "bulk", defaultValue = "false") boolean bulk
     ) {
-        quadImportService.importModelToRemove(files);
+        quadImportService.importModelToRemove(files, bulk);
     }
 
     @Operation(
@@ -65,8 +69,10 @@ public class QuadImportController {
     @PostMapping(value = "/remove-add")
     void submit(
             @Parameter(description = "The file list containing all the triple/quads to import as valid when filename contains 'add' and invalid when filename contains 'remove' in a new version", name = "files")
-            @RequestParam("files") List<MultipartFile> files
+            @RequestParam("files") List<MultipartFile> files,
+            @Parameter(description = "Loads the quads with the PostgreSQL COPY bulk mode (faster for initial loads and very large versions)", name = "bulk")
+            @RequestParam(value = "bulk", defaultValue = "false") boolean bulk
     ) {
-        quadImportService.importModelToRemoveAndAdd(files);
+        quadImportService.importModelToRemoveAndAdd(files, bulk);
     }
 }
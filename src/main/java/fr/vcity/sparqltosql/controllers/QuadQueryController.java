@@ -1,6 +1,10 @@
 package fr.vcity.sparqltosql.controllers;
 
 import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+import fr.vcity.sparqltosql.dto.SPARQLExplanation;
+import fr.vcity.sparqltosql.model.QuadCursor;
+import fr.vcity.sparqltosql.model.QuadPage;
+import fr.vcity.sparqltosql.repository.RDFResultCacheComponent;
 import fr.vcity.sparqltosql.services.QuadQueryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -11,16 +15,48 @@ import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 @RestController
 @Tag(name = "Query API")
 @RequestMapping("/query")
 public class QuadQueryController {
+    private static final String SPARQL_RESULTS_JSON = "application/sparql-results+json";
+    private static final String RDF_PATCH = "application/rdf-patch";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * The formats of the quads, the first one (the JSON array of the versioned quads) is the default one
+     */
+    private static final Map<MediaType, Lang> QUAD_FORMATS = formats(
+            MediaType.APPLICATION_JSON, null, Lang.NQUADS, Lang.RDFTHRIFT, Lang.RDFPROTO
+    );
+
+    /**
+     * The formats of the SPARQL results, the first one is the default one
+     */
+    private static final Map<MediaType, Lang> SOLUTION_FORMATS = formats(
+            MediaType.parseMediaType(SPARQL_RESULTS_JSON), ResultSetLang.RS_JSON,
+            ResultSetLang.RS_TSV, ResultSetLang.RS_CSV, ResultSetLang.RS_Thrift, ResultSetLang.RS_Protobuf
+    );
+
     QuadQueryService quadQueryService;
 
     public QuadQueryController(QuadQueryService quadQueryService) {
@@ -29,7 +65,8 @@ public class QuadQueryController {
 
     @Operation(
             summary = "Search by validity",
-            description = "Search all quads filtered by a given validity and returns the result"
+            description = "Search all quads filtered by a given validity and returns the result " +
+                    "(the JSON array of the versioned quads by default, N-Quads, RDF Thrift or RDF Protobuf with the Accept header)"
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "The query filtered result",
@@ -39,22 +76,47 @@ public class QuadQueryController {
                                     schema = @Schema(implementation = RDFCompleteVersionedQuad.class)
                             )
                     )}),
-            @ApiResponse(responseCode = "400", description = "Invalid validity",
+            @ApiResponse(responseCode = "400", description = "Invalid validity, page cursor or limit",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "Nothing found",
                     content = @Content)}
     )
     @GetMapping(value = "/validity/{pattern}")
-    ResponseEntity<List<RDFCompleteVersionedQuad>> queryRequestedValidity(
+    ResponseEntity<StreamingResponseBody> queryRequestedValidity(
             @Parameter(description = "The validity string (in bit string format)", name = "pattern", example = "110")
-            @PathVariable("pattern") String requestedValidity
-    ) {
-        return ResponseEntity.ok(quadQueryService.queryRequestedValidity(requestedValidity));
+            @PathVariable("pattern") String requestedValidity,
+            @Parameter(description = "The cursor of the previous page (returned inside the next link of the page)")
+            @RequestParam(value = "after", required = false) String after,
+            @Parameter(description = "The number of quads of a page (the quads are paginated when it or the cursor is set)")
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = negotiate(accept, QUAD_FORMATS);
+        Lang lang = QUAD_FORMATS.get(mediaType);
+
+        if (after != null || limit != null) {
+            return page(mediaType, lang, quadQueryService.queryRequestedValidity(
+                    requestedValidity,
+                    after == null ? QuadCursor.FIRST : QuadCursor.decode(after),
+                    limit == null ? DEFAULT_PAGE_SIZE : limit
+            ));
+        }
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(outputStream -> {
+                    if (lang == null) {
+                        quadQueryService.queryRequestedValidity(requestedValidity, outputStream);
+                    } else {
+                        quadQueryService.queryRequestedValidity(requestedValidity, lang, outputStream);
+                    }
+                });
     }
 
     @Operation(
             summary = "Search by version",
-            description = "Find all quads filtered by a given version and returns the result"
+            description = "Find all quads filtered by a given version and returns the result " +
+                    "(the JSON array of the versioned quads by default, N-Quads, RDF Thrift or RDF Protobuf with the Accept header)"
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "The query filtered result",
@@ -63,40 +125,191 @@ public class QuadQueryController {
                                     schema = @Schema(implementation = RDFCompleteVersionedQuad.class)
                             )
                     )}),
-            @ApiResponse(responseCode = "400", description = "Invalid version",
+            @ApiResponse(responseCode = "400", description = "Invalid version, page cursor or limit",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "Nothing found",
                     content = @Content)}
     )
     @GetMapping("/version/{idVersion}")
-    ResponseEntity<List<RDFCompleteVersionedQuad>> queryRequestedVersion(
+    ResponseEntity<StreamingResponseBody> queryRequestedVersion(
             @Parameter(description = "The version number", name = "idVersion", example = "3")
-            @PathVariable("idVersion") Integer requestedVersion
+            @PathVariable("idVersion") Integer requestedVersion,
+            @Parameter(description = "The cursor of the previous page (returned inside the next link of the page)")
+            @RequestParam(value = "after", required = false) String after,
+            @Parameter(description = "The number of quads of a page (the quads are paginated when it or the cursor is set)")
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = negotiate(accept, QUAD_FORMATS);
+        Lang lang = QUAD_FORMATS.get(mediaType);
+
+        if (after != null || limit != null) {
+            return page(mediaType, lang, quadQueryService.queryRequestedVersion(
+                    requestedVersion,
+                    after == null ? QuadCursor.FIRST : QuadCursor.decode(after),
+                    limit == null ? DEFAULT_PAGE_SIZE : limit
+            ));
+        }
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(outputStream -> {
+                    if (lang == null) {
+                        quadQueryService.queryRequestedVersion(requestedVersion, outputStream);
+                    } else {
+                        quadQueryService.queryRequestedVersion(requestedVersion, lang, outputStream);
+                    }
+                });
+    }
+
+    @Operation(
+            summary = "Changes between two versions",
+            description = "Find the quads added and removed between two versions and returns them as an RDF Patch " +
+                    "(A and D rows), or the N-Quads of the added or of the removed quads only"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The changed quads",
+                    content = {
+                            @Content(mediaType = RDF_PATCH),
+                            @Content(mediaType = "application/n-quads")
+                    }),
+            @ApiResponse(responseCode = "400", description = "Invalid version or change set",
+                    content = @Content)}
+    )
+    @GetMapping("/diff/{fromVersion}/{toVersion}")
+    ResponseEntity<StreamingResponseBody> queryVersionDiff(
+            @Parameter(description = "The first version number", name = "fromVersion", example = "1")
+            @PathVariable("fromVersion") Integer fromVersion,
+            @Parameter(description = "The second version number", name = "toVersion", example = "2")
+            @PathVariable("toVersion") Integer toVersion,
+            @Parameter(description = "The change set (added or removed), both when absent", example = "added")
+            @RequestParam(value = "set", required = false) String set
     ) {
-        return ResponseEntity.ok(quadQueryService.queryRequestedVersion(requestedVersion));
+        Boolean isAdd = switch (set == null ? "" : set) {
+            case "" -> null;
+            case "added" -> true;
+            case "removed" -> false;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown change set: " + set);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(isAdd == null ? MediaType.parseMediaType(RDF_PATCH) : MediaType.parseMediaType(Lang.NQUADS.getHeaderString()))
+                .body(outputStream -> quadQueryService.queryVersionDiff(fromVersion, toVersion, isAdd, outputStream));
     }
 
     @Operation(
             summary = "SPARQL query endpoint",
-            description = "Executes the SPARQL query and returns the result"
+            description = "Executes the SPARQL query and streams the result in the format of the Accept header " +
+                    "(SPARQL 1.1 Query Results JSON by default, TSV, CSV, Thrift or Protobuf)"
     )
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "The query filtered result",
-                    content = {@Content(mediaType = "application/json",
-                            array = @ArraySchema(
-                                    schema = @Schema(implementation = RDFCompleteVersionedQuad.class)
-                            )
-                    )}),
+            @ApiResponse(responseCode = "200", description = "The term bound to each projected variable, for each solution",
+                    content = {@Content(mediaType = SPARQL_RESULTS_JSON)}),
+            @ApiResponse(responseCode = "406", description = "Unsupported result format",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "Invalid SPARQL request",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "Nothing found",
                     content = @Content)}
     )
     @PostMapping("/sparql")
-    ResponseEntity<List<RDFCompleteVersionedQuad>> querySPARQL(
+    ResponseEntity<StreamingResponseBody> querySPARQL(
+            @RequestBody(description = "The SPARQL query", required = true)
+            @org.springframework.web.bind.annotation.RequestBody String queryString,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = negotiate(accept, SOLUTION_FORMATS);
+        RDFResultCacheComponent.ResultWriter writer = quadQueryService.querySPARQL(queryString, SOLUTION_FORMATS.get(mediaType));
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(writer::write);
+    }
+
+    @Operation(
+            summary = "SPARQL query profiling endpoint",
+            description = "Translates the SPARQL query and runs it with EXPLAIN (ANALYZE, BUFFERS): returns the algebra, " +
+                    "the SQL query and the values bound to its ? placeholders, its plan and the duration of each phase " +
+                    "(parse, algebra, translate, resolve, execute). The query waits for a slot as the other queries."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The explanation of the query",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = SPARQLExplanation.class)
+                    )}),
+            @ApiResponse(responseCode = "400", description = "Invalid or unsupported SPARQL request",
+                    content = @Content),
+            @ApiResponse(responseCode = "503", description = "Too many queries running or waiting",
+                    content = @Content)}
+    )
+    @PostMapping("/sparql/explain")
+    SPARQLExplanation explainSPARQL(
             @RequestBody(description = "The SPARQL query", required = true)
             @org.springframework.web.bind.annotation.RequestBody String queryString
     ) {
-        return ResponseEntity.ok(quadQueryService.querySPARQL(queryString));
+        return quadQueryService.explainSPARQL(queryString);
+    }
+
+    /**
+     * @param mediaType The media type of the quads
+     * @param lang      The RDF format of the quads (<code>null</code> for the JSON array of the versioned quads)
+     * @param page      The page of quads
+     * @return The quads of the page, with the link of the next page (<code>Link: &lt;…?after=…&gt;; rel="next"</code>)
+     */
+    private ResponseEntity<StreamingResponseBody> page(MediaType mediaType, Lang lang, QuadPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(mediaType);
+
+        if (page.next() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.next().encode())
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+
+        return response.body(outputStream -> quadQueryService.writeQuads(page.quads(), lang, outputStream));
+    }
+
+    /**
+     * @param accept  The <code>Accept</code> header of the request
+     * @param formats The supported formats, the first one being the default one
+     * @return The most specific supported media type accepted by the client
+     * @throws HttpMediaTypeNotAcceptableException if none of the supported formats is accepted (406)
+     */
+    private static MediaType negotiate(String accept, Map<MediaType, Lang> formats) throws HttpMediaTypeNotAcceptableException {
+        List<MediaType> supported = List.copyOf(formats.keySet());
+
+        if (accept == null || accept.isBlank()) {
+            return supported.get(0);
+        }
+
+        List<MediaType> accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        MimeTypeUtils.sortBySpecificity(accepted);
+
+        for (MediaType acceptedType : accepted) {
+            for (MediaType supportedType : supported) {
+                if (acceptedType.isCompatibleWith(supportedType)) {
+                    return supportedType;
+                }
+            }
+        }
+
+        throw new HttpMediaTypeNotAcceptableException(supported);
+    }
+
+    /**
+     * @param defaultType The media type of the default format
+     * @param defaultLang The language of the default format (<code>null</code> for the JSON array of the versioned quads)
+     * @param langs       The other formats
+     * @return The languages by media type, in the given order
+     */
+    private static Map<MediaType, Lang> formats(MediaType defaultType, Lang defaultLang, Lang... langs) {
+        Map<MediaType, Lang> formats = new LinkedHashMap<>();
+        formats.put(defaultType, defaultLang);
+
+        for (Lang lang : langs) {
+            formats.put(MediaType.parseMediaType(lang.getHeaderString()), lang);
+        }
+
+        return formats;
     }
 }
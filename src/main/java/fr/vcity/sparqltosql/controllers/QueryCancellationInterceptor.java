@@ -0,0 +1,53 @@
+package fr.vcity.sparqltosql.controllers;
+
+import fr.vcity.sparqltosql.model.QueryExecution;
+import fr.vcity.sparqltosql.repository.RDFQueryExecutionComponent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Binds the query of a streamed response to its request: the query is cancelled once the request times out
+ * or fails (i.e. the client disconnected), instead of holding its connection until the end.
+ */
+@Component
+public class QueryCancellationInterceptor implements CallableProcessingInterceptor {
+    private static final String QUERY_EXECUTION_ATTRIBUTE = QueryExecution.class.getName();
+
+    private final RDFQueryExecutionComponent rdfQueryExecutionComponent;
+
+    public QueryCancellationInterceptor(RDFQueryExecutionComponent rdfQueryExecutionComponent) {
+        this.rdfQueryExecutionComponent = rdfQueryExecutionComponent;
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        request.setAttribute(QUERY_EXECUTION_ATTRIBUTE, rdfQueryExecutionComponent.open(), RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        rdfQueryExecutionComponent.close();
+    }
+
+    @Override
+    public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+        cancel(request, "the request timed out");
+        return RESULT_NONE;
+    }
+
+    @Override
+    public <T> Object handleError(NativeWebRequest request, Callable<T> task, Throwable t) {
+        cancel(request, "the request failed (" + t.getMessage() + ")");
+        return RESULT_NONE;
+    }
+
+    private static void cancel(NativeWebRequest request, String reason) {
+        if (request.getAttribute(QUERY_EXECUTION_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof QueryExecution execution) {
+            execution.cancel(reason);
+        }
+    }
+}
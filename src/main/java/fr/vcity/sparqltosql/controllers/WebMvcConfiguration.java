@@ -0,0 +1,59 @@
+package fr.vcity.sparqltosql.controllers;
+
+import fr.vcity.sparqltosql.exceptions.QueryRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * The streamed responses are written by a dedicated pool, larger than the number of queries running at once:
+ * the queries beyond <code>max-concurrent</code> wait for a slot (and time out) inside the admission control
+ * instead of waiting for a thread. The responses beyond the pool and its bounded queue are rejected.
+ */
+@Configuration
+public class WebMvcConfiguration implements WebMvcConfigurer {
+    private final QueryCancellationInterceptor queryCancellationInterceptor;
+    private final ThreadPoolTaskExecutor streamingExecutor;
+
+    public WebMvcConfiguration(
+            QueryCancellationInterceptor queryCancellationInterceptor,
+            MeterRegistry meterRegistry,
+            @Value("${sparqltosql.query.max-concurrent:8}") int maxConcurrent,
+            @Value("${sparqltosql.query.async.threads:32}") int threads,
+            @Value("${sparqltosql.query.async.queue-capacity:100}") int queueCapacity
+    ) {
+        if (threads <= maxConcurrent) {
+            throw new IllegalArgumentException("sparqltosql.query.async.threads (" + threads + ") must be above sparqltosql.query.max-concurrent (" + maxConcurrent + ")");
+        }
+
+        Counter rejectedQueries = meterRegistry.counter("query.rejected");
+
+        this.queryCancellationInterceptor = queryCancellationInterceptor;
+        this.streamingExecutor = new ThreadPoolTaskExecutor();
+        streamingExecutor.setCorePoolSize(threads);
+        streamingExecutor.setMaxPoolSize(threads);
+        streamingExecutor.setQueueCapacity(queueCapacity);
+        streamingExecutor.setThreadNamePrefix("query-stream-");
+        streamingExecutor.setRejectedExecutionHandler((task, executor) -> {
+            rejectedQueries.increment();
+            throw new QueryRejectedException("No thread freed to stream the response");
+        });
+        streamingExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamingExecutor.shutdown();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingExecutor);
+        configurer.registerCallableInterceptors(queryCancellationInterceptor);
+    }
+}
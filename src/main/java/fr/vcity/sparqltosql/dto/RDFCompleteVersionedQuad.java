@@ -1,5 +1,6 @@
 package fr.vcity.sparqltosql.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Getter;
 import lombok.Setter;
@@ -23,6 +24,11 @@ public class RDFCompleteVersionedQuad {
     @Schema(name = "The quad validity", example = "1001")
     private byte[] validity;
 
+    // the literal type of the object, only used by the RDF formats
+    @JsonIgnore
+    @Schema(hidden = true)
+    private String objectType;
+
     public RDFCompleteVersionedQuad(
             String s,
             String p,
@@ -0,0 +1,30 @@
+package fr.vcity.sparqltosql.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+public class SPARQLExplanation {
+
+    @Schema(name = "The algebra of the query, in quad form", example = "(quadpattern (quad <urn:x-arq:DefaultGraphNode> ?s ?p ?o))")
+    private String algebra;
+
+    @Schema(name = "The SQL query run by PostgreSQL, its ? placeholders are bound to the parameters in order", example = "SELECT ... FROM (SELECT ... FROM versioned_quad t0 WHERE t0.id_property = ?) q")
+    private String sql;
+
+    @Schema(name = "The dictionary ids and the values bound to the placeholders of the SQL query", example = "[42, 12.5]")
+    private List<Object> parameters;
+
+    @Schema(name = "The output of EXPLAIN (ANALYZE, BUFFERS), one line per element", example = "[\"Seq Scan on versioned_quad t0 ...\"]")
+    private List<String> plan;
+
+    @Schema(name = "The duration of each phase, in milliseconds", example = "{\"parse\": 0.4, \"algebra\": 0.2, \"translate\": 0.3, \"execute\": 1.2}")
+    private Map<String, Double> timings = new LinkedHashMap<>();
+
+}
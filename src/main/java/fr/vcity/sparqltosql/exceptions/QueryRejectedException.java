@@ -0,0 +1,25 @@
+package fr.vcity.sparqltosql.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The query can't run: too many queries are running or waiting.
+ * <br />A rejected execution, so that the rejected streamed responses are answered the same way.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class QueryRejectedException extends RejectedExecutionException {
+    /**
+     * Constructs a new runtime exception with the specified detail message.
+     * The cause is not initialized, and may subsequently be initialized by a
+     * call to {@link #initCause}.
+     *
+     * @param message the detail message. The detail message is saved for
+     *                later retrieval by the {@link #getMessage()} method.
+     */
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
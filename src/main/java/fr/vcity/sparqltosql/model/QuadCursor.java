@@ -0,0 +1,51 @@
+package fr.vcity.sparqltosql.model;
+
+import fr.vcity.sparqltosql.exceptions.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The primary key of the last quad of a page (in the order of the <code>versioned_quad</code> primary key):
+ * the next page starts right after it, with an index range scan whatever the depth of the page.
+ *
+ * @param idObject     The object id
+ * @param idProperty   The property id
+ * @param idSubject    The subject id
+ * @param idNamedGraph The named graph id
+ */
+public record QuadCursor(int idObject, int idProperty, int idSubject, int idNamedGraph) {
+
+    /**
+     * The cursor before the first quad
+     */
+    public static final QuadCursor FIRST = new QuadCursor(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+
+    /**
+     * @return The opaque token of the cursor
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (idObject + "." + idProperty + "." + idSubject + "." + idNamedGraph).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * @param token The opaque token of a cursor
+     * @return The cursor
+     * @throws InvalidCursorException if the token wasn't returned by {@link #encode()}
+     */
+    public static QuadCursor decode(String token) {
+        try {
+            String[] ids = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\.");
+
+            if (ids.length != 4) {
+                throw new InvalidCursorException("Invalid cursor: " + token);
+            }
+
+            return new QuadCursor(Integer.parseInt(ids[0]), Integer.parseInt(ids[1]), Integer.parseInt(ids[2]), Integer.parseInt(ids[3]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor: " + token);
+        }
+    }
+}
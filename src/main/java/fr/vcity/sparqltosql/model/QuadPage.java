@@ -0,0 +1,14 @@
+package fr.vcity.sparqltosql.model;
+
+import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+
+import java.util.List;
+
+/**
+ * A page of quads
+ *
+ * @param quads The quads of the page
+ * @param next  The cursor of the next page, <code>null</code> for the last page
+ */
+public record QuadPage(List<RDFCompleteVersionedQuad> quads, QuadCursor next) {
+}
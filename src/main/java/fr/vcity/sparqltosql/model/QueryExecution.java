@@ -0,0 +1,71 @@
+package fr.vcity.sparqltosql.model;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The statements run by the query of a request. Once cancelled (timeout, disconnected client...),
+ * the running statements are cancelled by the database and no other statement can be registered.
+ */
+@Slf4j
+public class QueryExecution {
+    private final List<Statement> statements = new ArrayList<>();
+    private String cancellationReason;
+
+    /**
+     * @param statement The statement about to run
+     * @throws SQLException if the query is already cancelled
+     */
+    public synchronized void register(Statement statement) throws SQLException {
+        if (cancellationReason != null) {
+            throw new SQLException("The query was cancelled: " + cancellationReason);
+        }
+
+        statements.add(statement);
+    }
+
+    /**
+     * Cancels the running statements, once
+     *
+     * @param reason The reason of the cancellation
+     */
+    public void cancel(String reason) {
+        List<Statement> runningStatements;
+
+        synchronized (this) {
+            if (cancellationReason != null) {
+                return;
+            }
+
+            cancellationReason = reason;
+            runningStatements = List.copyOf(statements);
+        }
+
+        log.info("Cancel the query: {}", reason);
+        for (Statement statement : runningStatements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                log.debug("Statement not cancelled: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the query was cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancellationReason != null;
+    }
+
+    /**
+     * @return The reason of the cancellation, <code>null</code> if the query isn't cancelled
+     */
+    public synchronized String getCancellationReason() {
+        return cancellationReason;
+    }
+}
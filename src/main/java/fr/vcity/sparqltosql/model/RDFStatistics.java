@@ -0,0 +1,62 @@
+package fr.vcity.sparqltosql.model;
+
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Snapshot of the cardinalities of <code>versioned_quad</code> by property, refreshed after each import
+ */
+public class RDFStatistics {
+
+    /**
+     * The statistics before the first refresh: the patterns keep their order
+     */
+    public static final RDFStatistics EMPTY = new RDFStatistics(0, 0, Map.of());
+
+    @Getter
+    private final long version;
+    @Getter
+    private final long quadCount;
+    private final Map<Key, Cardinality> cardinalities;
+
+    /**
+     * @param version       The number of the refresh
+     * @param quadCount     The number of quads
+     * @param cardinalities The cardinalities by property and named graph (<code>null</code> for all the named graphs)
+     */
+    public RDFStatistics(long version, long quadCount, Map<Key, Cardinality> cardinalities) {
+        this.version = version;
+        this.quadCount = quadCount;
+        this.cardinalities = Map.copyOf(cardinalities);
+    }
+
+    public boolean isEmpty() {
+        return version == 0;
+    }
+
+    /**
+     * @param property   The property URI
+     * @param namedGraph The named graph URI, or <code>null</code> for all the named graphs
+     * @return The cardinality of the property, empty if it has no quad
+     */
+    public Optional<Cardinality> getCardinality(String property, String namedGraph) {
+        return Optional.ofNullable(cardinalities.get(new Key(property, namedGraph)));
+    }
+
+    /**
+     * @param property   The property URI
+     * @param namedGraph The named graph URI, or <code>null</code> for all the named graphs
+     */
+    public record Key(String property, String namedGraph) {
+    }
+
+    /**
+     * @param quadCount        The number of quads
+     * @param distinctSubjects The number of distinct subjects
+     * @param distinctObjects  The number of distinct objects
+     */
+    public record Cardinality(long quadCount, long distinctSubjects, long distinctObjects) {
+    }
+}
@@ -0,0 +1,23 @@
+package fr.vcity.sparqltosql.model;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * A constant of the SPARQL query, bound as the id of its dictionary entry when the SQL query runs,
+ * or as its value inside an expression
+ *
+ * @param node         The IRI or literal
+ * @param type         The dictionary of the constant, or the type of its value (<code>NUMBER</code> or <code>STRING</code>)
+ * @param inExpression <code>true</code> if the constant is an operand of an expression, <code>false</code> if it is
+ *                     a term of a pattern
+ */
+public record SQLParameter(Node node, SQLVarType type, boolean inExpression) {
+
+    /**
+     * @param node The IRI or literal of a pattern
+     * @param type The dictionary of the constant
+     */
+    public SQLParameter(Node node, SQLVarType type) {
+        this(node, type, false);
+    }
+}
@@ -0,0 +1,65 @@
+package fr.vcity.sparqltosql.model;
+
+import lombok.Getter;
+import org.apache.jena.graph.Node;
+
+import java.util.*;
+
+/**
+ * A translated SPARQL operator: a SQL <code>SELECT</code> returning one id column per variable
+ * (the column is named after the variable), and the constants bound to its <code>?</code> placeholders, in order.
+ * An ordered query also returns the <code>RANK</code> column, the rank of each row in the order of the SPARQL
+ * <code>ORDER BY</code>: the operators above it must sort their rows by this rank (PostgreSQL doesn't keep the order
+ * of a subquery).
+ * <br />The nullable variables may be unbound (<code>NULL</code>) in some rows (i.e. inside an <code>OPTIONAL</code>),
+ * the other variables are always bound.
+ */
+@Getter
+public class SQLQuery {
+    /**
+     * The column of the rank of the rows of an ordered query
+     */
+    public static final String RANK = column(".rank");
+
+    private final String sql;
+    private final Map<String, SQLVarType> vars;
+    private final Set<String> nullableVars;
+    private final List<SQLParameter> params;
+    private final boolean ordered;
+
+    public SQLQuery(String sql, Map<String, SQLVarType> vars, List<SQLParameter> params) {
+        this(sql, vars, Set.of(), params, false);
+    }
+
+    public SQLQuery(String sql, Map<String, SQLVarType> vars, Set<String> nullableVars, List<SQLParameter> params, boolean ordered) {
+        this.sql = sql;
+        this.vars = new LinkedHashMap<>(vars);
+        this.nullableVars = new LinkedHashSet<>(nullableVars);
+        this.params = new ArrayList<>(params);
+        this.ordered = ordered;
+    }
+
+    /**
+     * @param constants The constants by placeholder
+     * @return The same query whose placeholder parameters are replaced by their constants
+     */
+    public SQLQuery bind(Map<Node, Node> constants) {
+        return new SQLQuery(
+                sql,
+                vars,
+                nullableVars,
+                params.stream()
+                        .map(param -> new SQLParameter(constants.getOrDefault(param.node(), param.node()), param.type(), param.inExpression()))
+                        .toList(),
+                ordered
+        );
+    }
+
+    /**
+     * @param var The variable name
+     * @return The quoted column name of the variable
+     */
+    public static String column(String var) {
+        return "\"" + var + "\"";
+    }
+}
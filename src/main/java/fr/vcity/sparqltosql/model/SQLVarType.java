@@ -0,0 +1,28 @@
+package fr.vcity.sparqltosql.model;
+
+/**
+ * The id domain of a variable column inside a translated SQL query,
+ * or the type of the value computed by an aggregate or an expression (not inside the dictionary)
+ */
+public enum SQLVarType {
+    /**
+     * <code>resource_or_literal</code> id (subject, property or object)
+     */
+    TERM,
+    /**
+     * <code>named_graph</code> id
+     */
+    NAMED_GRAPH,
+    /**
+     * Validity <code>bit varying</code> of one bit per version
+     */
+    VALIDITY,
+    /**
+     * Computed <code>numeric</code> value
+     */
+    NUMBER,
+    /**
+     * Computed <code>text</code> value
+     */
+    STRING
+}
@@ -0,0 +1,73 @@
+package fr.vcity.sparqltosql.repository;
+
+/**
+ * Storage strategy of the quads validity inside the <code>versioned_quad</code> table.
+ * The strategy is selected with the <code>sparqltosql.validity.storage</code> property (<code>bitstring</code> or <code>interval</code>).
+ * <br />In both strategies, a quad keeps the validity of its last written version in the next versions,
+ * so an import only writes the quads whose validity changes.
+ */
+public interface IRDFValidityStorage {
+
+    /**
+     * The number of versions (one version per commit)
+     */
+    String VERSION_COUNT = "(SELECT count(*)::integer FROM commit)";
+
+    /**
+     * The versions of a bit string parameter (e.g. <code>{[0,2),[3,)}</code> for <code>1101</code>),
+     * <code>NULL</code> when its length isn't the number of versions
+     */
+    String VALIDITY_PARAMETER_RANGES = """
+            (SELECT validity_to_ranges(p.validity)
+                FROM (SELECT CAST(? AS bit varying) AS validity) p
+                WHERE bit_length(p.validity) = %s
+            )""".formatted(VERSION_COUNT);
+
+    /**
+     * @param alias The alias of the <code>versioned_quad</code> table
+     * @return The SQL expression of the validity as a bit string of one bit per version
+     */
+    String getValidityExpression(String alias);
+
+    /**
+     * @param alias   The alias of the <code>versioned_quad</code> table
+     * @param version The version index
+     * @return The SQL condition true when the quad is valid in the version
+     */
+    String getVersionCondition(String alias, int version);
+
+    /**
+     * @param alias The alias of the <code>versioned_quad</code> table
+     * @param mask  The bit string of one bit per version (<code>1</code> for the versions to match)
+     * @return The SQL condition true when the quad is valid in at least one version of the mask
+     */
+    String getAnyVersionCondition(String alias, String mask);
+
+    /**
+     * @param alias    The alias of the <code>versioned_quad</code> table
+     * @param validity The bit string of one bit per version
+     * @return The SQL condition true when the quad has this validity over the first versions (the next ones are ignored)
+     */
+    String getValidityCondition(String alias, String validity);
+
+    /**
+     * @param alias The alias of the <code>versioned_quad</code> table
+     * @return The SQL condition true when the quad has the validity of the bit string parameter over all the versions
+     */
+    String getValidityParameterCondition(String alias);
+
+    /**
+     * @param isAdd   <code>true</code> if the quads are valid in the version, <code>false</code> otherwise
+     * @param version The version index
+     * @return The SQL upsert of a quad with the subject, property, object and named graph ids as parameters
+     */
+    String getUpsertQuery(boolean isAdd, int version);
+
+    /**
+     * @param source  The SQL query returning the distinct quads to merge
+     *                (<code>id_subject, id_property, id_object, id_named_graph, is_add</code> columns)
+     * @param version The version index
+     * @return The SQL upsert of all the quads of the source query
+     */
+    String getMergeQuery(String source, int version);
+}
@@ -0,0 +1,116 @@
+package fr.vcity.sparqltosql.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores the validity as a <code>bit varying</code> of one bit per version (<code>validity</code> column).
+ * <br />A bit string may be shorter than the number of versions: the missing trailing bits are equal to its last bit.
+ */
+@Component
+@ConditionalOnProperty(name = "sparqltosql.validity.storage", havingValue = "bitstring", matchIfMissing = true)
+public class RDFBitStringValidityStorage implements IRDFValidityStorage {
+
+    @Override
+    public String getValidityExpression(String alias) {
+        return """
+                (%1$s.validity || repeat(
+                    get_bit(%1$s.validity, bit_length(%1$s.validity) - 1)::text,
+                    %2$s - bit_length(%1$s.validity)
+                )::bit varying)""".formatted(alias, VERSION_COUNT);
+    }
+
+    /**
+     * The condition matches the <code>versioned_quad_validity_idx</code> GiST index on <code>validity_to_ranges(validity)</code>,
+     * so the valid quads are found without reading the whole table.
+     */
+    @Override
+    public String getVersionCondition(String alias, int version) {
+        return "validity_to_ranges(%s.validity) @> %d".formatted(alias, version);
+    }
+
+    /**
+     * The mask is applied by a single bitwise AND, whatever the number of versions.
+     */
+    @Override
+    public String getAnyVersionCondition(String alias, String mask) {
+        return "(%s & B'%s') <> B'%s'".formatted(getResizedValidity(alias, mask.length()), mask, "0".repeat(mask.length()));
+    }
+
+    @Override
+    public String getValidityCondition(String alias, String validity) {
+        return "%s = B'%s'".formatted(getResizedValidity(alias, validity.length()), validity);
+    }
+
+    /**
+     * The versions are compared as ranges, so the condition matches the <code>versioned_quad_validity_idx</code> GiST index.
+     */
+    @Override
+    public String getValidityParameterCondition(String alias) {
+        return "validity_to_ranges(%s.validity) = %s".formatted(alias, VALIDITY_PARAMETER_RANGES);
+    }
+
+    @Override
+    public String getUpsertQuery(boolean isAdd, int version) {
+        return """
+                INSERT INTO versioned_quad (id_subject, id_property, id_object, id_named_graph, validity)
+                VALUES (?, ?, ?, ?, LPAD('', %1$d, '0')::bit varying || B'%2$d')
+                ON CONFLICT ON CONSTRAINT versioned_quad_pkey
+                DO UPDATE SET validity = %3$s
+                WHERE %4$s
+                """.formatted(version, isAdd ? 1 : 0, getUpdatedValidity(version, "B'%d'".formatted(isAdd ? 1 : 0)), getUpdateCondition(version, Integer.toString(isAdd ? 1 : 0)));
+    }
+
+    @Override
+    public String getMergeQuery(String source, int version) {
+        return """
+                INSERT INTO versioned_quad (id_subject, id_property, id_object, id_named_graph, validity)
+                SELECT s.id_subject, s.id_property, s.id_object, s.id_named_graph,
+                    LPAD('', %1$d, '0')::bit varying || CASE WHEN s.is_add THEN B'1' ELSE B'0' END
+                    FROM (%2$s) s
+                ON CONFLICT ON CONSTRAINT versioned_quad_pkey
+                DO UPDATE SET validity = %3$s
+                WHERE %4$s
+                """.formatted(version, source, getUpdatedValidity(version, "get_bit(EXCLUDED.validity, %d)::bit".formatted(version)), getUpdateCondition(version, "get_bit(EXCLUDED.validity, %d)".formatted(version)));
+    }
+
+    /**
+     * @param alias  The alias of the <code>versioned_quad</code> table
+     * @param length The number of versions
+     * @return The validity completed with its last bit, or truncated, up to the number of versions
+     */
+    private static String getResizedValidity(String alias, int length) {
+        return """
+                substring(%1$s.validity || repeat(
+                    get_bit(%1$s.validity, bit_length(%1$s.validity) - 1)::text,
+                    %2$d
+                )::bit varying FROM 1 FOR %2$d)""".formatted(alias, length);
+    }
+
+    /**
+     * @param version The version index
+     * @param bit     The SQL expression of the new bit
+     * @return The validity completed with its last bit up to the version, then with the new bit
+     */
+    private static String getUpdatedValidity(int version, String bit) {
+        return """
+                CASE
+                    WHEN bit_length(versioned_quad.validity) > %1$d THEN set_bit(versioned_quad.validity, %1$d, get_bit(%2$s, 0))
+                    ELSE versioned_quad.validity || repeat(
+                        get_bit(versioned_quad.validity, bit_length(versioned_quad.validity) - 1)::text,
+                        %1$d - bit_length(versioned_quad.validity)
+                    )::bit varying || %2$s
+                END""".formatted(version, bit);
+    }
+
+    /**
+     * @param version The version index
+     * @param bit     The SQL expression of the new bit value (integer)
+     * @return The SQL condition true when the validity changes
+     */
+    private static String getUpdateCondition(int version, String bit) {
+        return """
+                bit_length(versioned_quad.validity) > %1$d
+                OR get_bit(versioned_quad.validity, bit_length(versioned_quad.validity) - 1) <> %2$s""".formatted(version, bit);
+    }
+}
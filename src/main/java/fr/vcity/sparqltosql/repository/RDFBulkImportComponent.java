@@ -0,0 +1,122 @@
+package fr.vcity.sparqltosql.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Bulk load of the quads: the parsed quads are copied inside the unlogged <code>versioned_quad_staging</code> table,
+ * then the dictionary resolution and the validity upsert are done by a few set-based statements.
+ */
+@Slf4j
+@Component
+public class RDFBulkImportComponent {
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final IRDFValidityStorage rdfValidityStorage;
+
+    public RDFBulkImportComponent(DataSource dataSource, JdbcTemplate jdbcTemplate, IRDFValidityStorage rdfValidityStorage) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.rdfValidityStorage = rdfValidityStorage;
+    }
+
+    /**
+     * Starts a copy inside the staging table
+     *
+     * @param idCommit The commit of the import
+     * @param isAdd    <code>true</code> if the quads are valid in the new version, <code>false</code> otherwise
+     * @return The writer of the staged quads
+     * @throws SQLException if the copy can't be started
+     */
+    public RDFStagingCopyWriter openStagingWriter(Integer idCommit, boolean isAdd) throws SQLException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+
+        try {
+            PGCopyOutputStream copyOutputStream = new PGCopyOutputStream(
+                    connection.unwrap(PGConnection.class),
+                    """
+                            COPY versioned_quad_staging (id_commit, is_add, subject, property, object, object_type, named_graph)
+                            FROM STDIN
+                            """
+            );
+
+            return new RDFStagingCopyWriter(dataSource, connection, copyOutputStream, idCommit, isAdd);
+        } catch (SQLException e) {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw e;
+        }
+    }
+
+    /**
+     * Merges the staged quads of the commit: saves the missing named graphs, resources and literals,
+     * then sets the validity of the new version for each quad (the unchanged quads aren't written).
+     * When a quad is both removed and added, it is valid.
+     *
+     * @param idCommit The commit of the import
+     * @param length   The index of the new version
+     */
+    @Transactional
+    public void mergeStaging(Integer idCommit, Integer length) {
+        int namedGraphs = jdbcTemplate.update("""
+                INSERT INTO named_graph (name)
+                SELECT DISTINCT s.named_graph
+                    FROM versioned_quad_staging s
+                    WHERE s.id_commit = ?
+                    AND NOT EXISTS (SELECT 1 FROM named_graph ng WHERE ng.name = s.named_graph)
+                ON CONFLICT (name) DO NOTHING
+                """, idCommit);
+
+        int resourceOrLiterals = jdbcTemplate.update("""
+                INSERT INTO resource_or_literal (name, type)
+                SELECT t.name, t.type
+                    FROM (
+                        SELECT s.subject AS name, NULL::varchar AS type FROM versioned_quad_staging s WHERE s.id_commit = ?
+                        UNION
+                        SELECT s.property, NULL::varchar FROM versioned_quad_staging s WHERE s.id_commit = ?
+                        UNION
+                        SELECT s.object, s.object_type FROM versioned_quad_staging s WHERE s.id_commit = ?
+                    ) t
+                    WHERE NOT EXISTS (
+                        SELECT 1 FROM resource_or_literal rl WHERE rl.name = t.name AND rl.type IS NOT DISTINCT FROM t.type
+                    )
+                ON CONFLICT (name, type) DO NOTHING
+                """, idCommit, idCommit, idCommit);
+
+        int quads = jdbcTemplate.update(rdfValidityStorage.getMergeQuery("""
+                SELECT DISTINCT ON (rls.id_resource_or_literal, rlp.id_resource_or_literal, rlo.id_resource_or_literal, ng.id_named_graph)
+                    rls.id_resource_or_literal AS id_subject,
+                    rlp.id_resource_or_literal AS id_property,
+                    rlo.id_resource_or_literal AS id_object,
+                    ng.id_named_graph,
+                    s.is_add
+                    FROM versioned_quad_staging s
+                    JOIN resource_or_literal rls ON rls.name = s.subject AND rls.type IS NULL
+                    JOIN resource_or_literal rlp ON rlp.name = s.property AND rlp.type IS NULL
+                    JOIN resource_or_literal rlo ON rlo.name = s.object AND rlo.type IS NOT DISTINCT FROM s.object_type
+                    JOIN named_graph ng ON ng.name = s.named_graph
+                    WHERE s.id_commit = ?
+                    ORDER BY rls.id_resource_or_literal, rlp.id_resource_or_literal, rlo.id_resource_or_literal, ng.id_named_graph, s.is_add DESC
+                """, length), idCommit);
+
+        log.info("Merged commit {}: {} named graphs, {} resources or literals, {} quads", idCommit, namedGraphs, resourceOrLiterals, quads);
+        deleteStaging(idCommit);
+    }
+
+    /**
+     * Deletes the staged quads of the commit
+     *
+     * @param idCommit The commit of the import
+     */
+    public void deleteStaging(Integer idCommit) {
+        jdbcTemplate.update("DELETE FROM versioned_quad_staging WHERE id_commit = ?", idCommit);
+    }
+}
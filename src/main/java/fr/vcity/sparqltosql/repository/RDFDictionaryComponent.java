@@ -0,0 +1,161 @@
+package fr.vcity.sparqltosql.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.vcity.sparqltosql.dao.RDFNamedGraph;
+import fr.vcity.sparqltosql.dao.RDFResourceOrLiteral;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Term to id dictionary of the <code>resource_or_literal</code> and <code>named_graph</code> tables.
+ * A bounded in-process cache is kept in front of the repositories so that repeated terms (predicates, graph names...)
+ * don't cost a round trip each time. The hit/miss statistics are published as <code>cache.*</code> metrics.
+ */
+@Slf4j
+@Component
+public class RDFDictionaryComponent {
+
+    private final IRDFResourceOrLiteralRepository rdfResourceRepository;
+    private final IRDFNamedGraphRepository rdfNamedGraphRepository;
+    private final Cache<Term, Integer> resourceOrLiteralCache;
+    private final Cache<String, Integer> namedGraphCache;
+    private final int maxTermLength;
+
+    public RDFDictionaryComponent(
+            IRDFResourceOrLiteralRepository rdfResourceRepository,
+            IRDFNamedGraphRepository rdfNamedGraphRepository,
+            MeterRegistry meterRegistry,
+            @Value("${sparqltosql.dictionary.cache.maximum-size:100000}") long maximumSize,
+            @Value("${sparqltosql.dictionary.cache.max-term-length:1024}") int maxTermLength
+    ) {
+        this.rdfResourceRepository = rdfResourceRepository;
+        this.rdfNamedGraphRepository = rdfNamedGraphRepository;
+        this.maxTermLength = maxTermLength;
+        this.resourceOrLiteralCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        this.namedGraphCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, resourceOrLiteralCache, "resource_or_literal");
+        CaffeineCacheMetrics.monitor(meterRegistry, namedGraphCache, "named_graph");
+    }
+
+    /**
+     * Saves the resource or literal inside the database if it doesn't exist.
+     * Terms longer than <code>max-term-length</code> (i.e. GML literals) are not cached.
+     *
+     * @param name The resource URI or the literal value
+     * @param type The literal type (<code>null</code> for a resource)
+     * @return The saved or existing RDFResourceOrLiteral element
+     */
+    public RDFResourceOrLiteral saveResourceOrLiteralOrReturnExisting(String name, String type) {
+        Integer id = name.length() > maxTermLength
+                ? findOrSaveResourceOrLiteral(new Term(name, type))
+                : resourceOrLiteralCache.get(new Term(name, type), this::findOrSaveResourceOrLiteral);
+
+        return new RDFResourceOrLiteral(id, name, type);
+    }
+
+    /**
+     * Saves the named graph inside the database if it doesn't exist.
+     *
+     * @param name The named graph URI
+     * @return The saved or existing RDFNamedGraph element
+     */
+    public RDFNamedGraph saveNamedGraphOrReturnExisting(String name) {
+        RDFNamedGraph rdfNamedGraph = new RDFNamedGraph(name);
+        rdfNamedGraph.setIdNamedGraph(namedGraphCache.get(name, this::findOrSaveNamedGraph));
+
+        return rdfNamedGraph;
+    }
+
+    /**
+     * Finds the id of the resource or literal without saving it
+     *
+     * @param name The resource URI or the literal value
+     * @param type The literal type (<code>null</code> for a resource)
+     * @return The id of the resource or literal if it exists
+     */
+    public Optional<Integer> findResourceOrLiteralId(String name, String type) {
+        Term term = new Term(name, type);
+        Integer id = resourceOrLiteralCache.getIfPresent(term);
+
+        if (id != null) {
+            return Optional.of(id);
+        }
+
+        Optional<Integer> foundId = rdfResourceRepository.findByNameAndType(name, type)
+                .map(RDFResourceOrLiteral::getIdResourceOrLiteral);
+
+        if (name.length() <= maxTermLength) {
+            foundId.ifPresent(existingId -> resourceOrLiteralCache.put(term, existingId));
+        }
+
+        return foundId;
+    }
+
+    /**
+     * Finds the id of the named graph without saving it
+     *
+     * @param name The named graph URI
+     * @return The id of the named graph if it exists
+     */
+    public Optional<Integer> findNamedGraphId(String name) {
+        Integer id = namedGraphCache.getIfPresent(name);
+
+        if (id != null) {
+            return Optional.of(id);
+        }
+
+        Optional<Integer> foundId = rdfNamedGraphRepository.findByName(name)
+                .map(RDFNamedGraph::getIdNamedGraph);
+        foundId.ifPresent(existingId -> namedGraphCache.put(name, existingId));
+
+        return foundId;
+    }
+
+    /**
+     * Empties the caches (the ids are no longer valid once the tables are emptied)
+     */
+    public void clear() {
+        resourceOrLiteralCache.invalidateAll();
+        namedGraphCache.invalidateAll();
+    }
+
+    private Integer findOrSaveResourceOrLiteral(Term term) {
+        return rdfResourceRepository.findByNameAndType(term.name(), term.type())
+                .or(() -> {
+                    log.debug("Insert resource or literal: {}", term.name());
+                    return Optional.ofNullable(rdfResourceRepository.save(term.name(), term.type()));
+                })
+                // saved by a concurrent import in the meantime
+                .or(() -> rdfResourceRepository.findByNameAndType(term.name(), term.type()))
+                .map(RDFResourceOrLiteral::getIdResourceOrLiteral)
+                .orElseThrow();
+    }
+
+    private Integer findOrSaveNamedGraph(String name) {
+        return rdfNamedGraphRepository.findByName(name)
+                .or(() -> {
+                    log.debug("Insert named graph: {}", name);
+                    return Optional.ofNullable(rdfNamedGraphRepository.save(name));
+                })
+                // saved by a concurrent import in the meantime
+                .or(() -> rdfNamedGraphRepository.findByName(name))
+                .map(RDFNamedGraph::getIdNamedGraph)
+                .orElseThrow();
+    }
+
+    private record Term(String name, String type) {
+    }
+}
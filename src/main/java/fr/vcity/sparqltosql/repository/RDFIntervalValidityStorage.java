@@ -0,0 +1,119 @@
+package fr.vcity.sparqltosql.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the validity as the ranges of versions where the quad is valid (<code>validity_ranges int4multirange</code> column,
+ * GiST indexed). A quad valid since the version N is stored as <code>{[N,)}</code>, so the length of a validity
+ * depends on the number of changes and not on the number of versions.
+ */
+@Component
+@ConditionalOnProperty(name = "sparqltosql.validity.storage", havingValue = "interval")
+public class RDFIntervalValidityStorage implements IRDFValidityStorage {
+
+    @Override
+    public String getValidityExpression(String alias) {
+        return "ranges_to_validity(%s.validity_ranges, %s)".formatted(alias, VERSION_COUNT);
+    }
+
+    @Override
+    public String getVersionCondition(String alias, int version) {
+        return "%s.validity_ranges @> %d".formatted(alias, version);
+    }
+
+    /**
+     * The versions of the mask are matched by a single range overlap, using the GiST index.
+     */
+    @Override
+    public String getAnyVersionCondition(String alias, String mask) {
+        return "%s.validity_ranges && '%s'::int4multirange".formatted(alias, toRanges(mask));
+    }
+
+    @Override
+    public String getValidityCondition(String alias, String validity) {
+        return "%s.validity_ranges * int4multirange(int4range(0, %d)) = '%s'::int4multirange"
+                .formatted(alias, validity.length(), toRanges(validity));
+    }
+
+    @Override
+    public String getValidityParameterCondition(String alias) {
+        return "%s.validity_ranges = %s".formatted(alias, VALIDITY_PARAMETER_RANGES);
+    }
+
+    @Override
+    public String getUpsertQuery(boolean isAdd, int version) {
+        return """
+                INSERT INTO versioned_quad (id_subject, id_property, id_object, id_named_graph, validity_ranges)
+                VALUES (?, ?, ?, ?, %1$s)
+                ON CONFLICT ON CONSTRAINT versioned_quad_pkey
+                DO UPDATE SET validity_ranges = versioned_quad.validity_ranges %2$s int4multirange(int4range(%3$d, NULL))
+                WHERE %4$s
+                """.formatted(
+                isAdd ? "int4multirange(int4range(%d, NULL))".formatted(version) : "'{}'::int4multirange",
+                isAdd ? "+" : "-",
+                version,
+                isAdd ? getAddCondition(version) : getRemoveCondition(version)
+        );
+    }
+
+    @Override
+    public String getMergeQuery(String source, int version) {
+        return """
+                INSERT INTO versioned_quad (id_subject, id_property, id_object, id_named_graph, validity_ranges)
+                SELECT s.id_subject, s.id_property, s.id_object, s.id_named_graph,
+                    CASE WHEN s.is_add THEN int4multirange(int4range(%1$d, NULL)) ELSE '{}'::int4multirange END
+                    FROM (%2$s) s
+                ON CONFLICT ON CONSTRAINT versioned_quad_pkey
+                DO UPDATE SET validity_ranges = CASE
+                    WHEN isempty(EXCLUDED.validity_ranges) THEN versioned_quad.validity_ranges - int4multirange(int4range(%1$d, NULL))
+                    ELSE versioned_quad.validity_ranges + int4multirange(int4range(%1$d, NULL))
+                END
+                WHERE CASE
+                    WHEN isempty(EXCLUDED.validity_ranges) THEN %3$s
+                    ELSE %4$s
+                END
+                """.formatted(version, source, getRemoveCondition(version), getAddCondition(version));
+    }
+
+    /**
+     * @param bits The bit string of one bit per version
+     * @return The multirange literal of the versions whose bit is <code>1</code> (e.g. <code>{[0,1),[2,4)}</code>)
+     */
+    private static String toRanges(String bits) {
+        List<String> ranges = new ArrayList<>();
+        int start = -1;
+
+        for (int i = 0; i <= bits.length(); i++) {
+            boolean valid = i < bits.length() && bits.charAt(i) == '1';
+
+            if (valid && start < 0) {
+                start = i;
+            } else if (!valid && start >= 0) {
+                ranges.add("[" + start + "," + i + ")");
+                start = -1;
+            }
+        }
+
+        return "{" + String.join(",", ranges) + "}";
+    }
+
+    /**
+     * @param version The version index
+     * @return The SQL condition true when the quad isn't already valid from the version
+     */
+    private static String getAddCondition(int version) {
+        return "NOT versioned_quad.validity_ranges @> int4range(%d, NULL)".formatted(version);
+    }
+
+    /**
+     * @param version The version index
+     * @return The SQL condition true when the quad is valid in the version or after
+     */
+    private static String getRemoveCondition(int version) {
+        return "versioned_quad.validity_ranges && int4range(%d, NULL)".formatted(version);
+    }
+}
@@ -0,0 +1,235 @@
+package fr.vcity.sparqltosql.repository;
+
+import fr.vcity.sparqltosql.exceptions.QueryCancelledException;
+import fr.vcity.sparqltosql.exceptions.QueryRejectedException;
+import fr.vcity.sparqltosql.model.QueryExecution;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Admission control of the queries reading the quads, so that a few heavy queries can't hold every connection
+ * (and starve the imports):
+ * <ul>
+ *     <li>at most <code>max-concurrent</code> queries run at once, the next ones wait in a fair queue
+ *     for <code>queue-timeout</code> before being rejected</li>
+ *     <li>each statement gets the JDBC query timeout, and the whole query (the streaming of its result included)
+ *     is cancelled after <code>timeout</code></li>
+ *     <li>the query of a request is cancelled once the request fails or times out (i.e. the client disconnected)</li>
+ * </ul>
+ * The running and queued queries, and the rejected and cancelled ones are published as <code>query.*</code> metrics.
+ */
+@Slf4j
+@Component
+public class RDFQueryExecutionComponent {
+    // the query of the current request, bound to the thread streaming its result
+    private final ThreadLocal<QueryExecution> currentExecution = new ThreadLocal<>();
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Semaphore slots;
+    private final Duration queueTimeout;
+    private final Duration timeout;
+    private final Counter rejectedQueries;
+    private final Counter cancelledQueries;
+
+    public RDFQueryExecutionComponent(
+            MeterRegistry meterRegistry,
+            @Value("${sparqltosql.query.max-concurrent:8}") int maxConcurrent,
+            @Value("${sparqltosql.query.queue-timeout:5s}") Duration queueTimeout,
+            @Value("${sparqltosql.query.timeout:60s}") Duration timeout
+    ) {
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.queueTimeout = queueTimeout;
+        this.timeout = timeout;
+        this.rejectedQueries = meterRegistry.counter("query.rejected");
+        this.cancelledQueries = meterRegistry.counter("query.cancelled");
+
+        Gauge.builder("query.running", slots, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .register(meterRegistry);
+        Gauge.builder("query.queued", slots, Semaphore::getQueueLength)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * Binds a new query execution to the current thread
+     *
+     * @return The query execution, to cancel from another thread
+     */
+    public QueryExecution open() {
+        QueryExecution execution = new QueryExecution();
+        currentExecution.set(execution);
+
+        return execution;
+    }
+
+    /**
+     * Unbinds the query execution from the current thread
+     */
+    public void close() {
+        currentExecution.remove();
+    }
+
+    /**
+     * Runs the query once a slot is free, and cancels it after the timeout
+     *
+     * @param outputStream The output of the result
+     * @param writer       The writer of the result, running the query
+     * @throws IOException if the output failed
+     */
+    public void execute(OutputStream outputStream, RDFResultCacheComponent.ResultWriter writer) throws IOException {
+        execute(execution -> {
+            writer.write(new CancellableOutputStream(outputStream, execution));
+            return null;
+        });
+    }
+
+    /**
+     * Runs the query once a slot is free, and cancels it after the timeout
+     *
+     * @param query The query, returning its whole result
+     * @param <T>   The type of the result
+     * @return The result of the query
+     */
+    public <T> T execute(Supplier<T> query) {
+        try {
+            return execute(execution -> query.get());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs the query with the query execution of the current thread, or with a new one
+     */
+    private <T> T execute(QueryTask<T> task) throws IOException {
+        QueryExecution execution = currentExecution.get();
+
+        if (execution == null) {
+            execution = open();
+            try {
+                return execute(execution, task);
+            } finally {
+                close();
+            }
+        }
+
+        return execute(execution, task);
+    }
+
+    /**
+     * @param sql  The query
+     * @param args The arguments of the query
+     * @return The creator of the statement of the query, with the query timeout, cancelled with the current query execution
+     */
+    public PreparedStatementCreator prepare(String sql, Object... args) {
+        return connection -> {
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            try {
+                new ArgumentPreparedStatementSetter(args).setValues(preparedStatement);
+                preparedStatement.setQueryTimeout((int) Math.max(1, timeout.toSeconds()));
+
+                QueryExecution execution = currentExecution.get();
+                if (execution != null) {
+                    execution.register(preparedStatement);
+                }
+
+                return preparedStatement;
+            } catch (SQLException | RuntimeException e) {
+                preparedStatement.close();
+                throw e;
+            }
+        };
+    }
+
+    private <T> T execute(QueryExecution execution, QueryTask<T> task) throws IOException {
+        try {
+            if (!slots.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejectedQueries.increment();
+                throw new QueryRejectedException("No query slot freed within " + queueTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryCancelledException("The query was interrupted while queued", e);
+        }
+
+        ScheduledFuture<?> deadline = timeoutScheduler.schedule(
+                () -> execution.cancel("timeout of " + timeout),
+                timeout.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+
+        try {
+            return task.run(execution);
+        } catch (RuntimeException | IOException e) {
+            if (execution.isCancelled()) {
+                cancelledQueries.increment();
+                throw new QueryCancelledException("The query was cancelled: " + execution.getCancellationReason(), e);
+            }
+
+            throw e;
+        } finally {
+            deadline.cancel(false);
+            slots.release();
+        }
+    }
+
+    /**
+     * A query run with its query execution
+     */
+    @FunctionalInterface
+    private interface QueryTask<T> {
+        T run(QueryExecution execution) throws IOException;
+    }
+
+    /**
+     * Stops the streaming of the result once the query is cancelled
+     * (the statement may be idle between two fetches, while the result is written)
+     */
+    private static class CancellableOutputStream extends FilterOutputStream {
+        private final QueryExecution execution;
+
+        CancellableOutputStream(OutputStream outputStream, QueryExecution execution) {
+            super(outputStream);
+            this.execution = execution;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkCancelled();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkCancelled();
+            out.write(b, off, len);
+        }
+
+        private void checkCancelled() throws IOException {
+            if (execution.isCancelled()) {
+                throw new IOException("The query was cancelled: " + execution.getCancellationReason());
+            }
+        }
+    }
+}
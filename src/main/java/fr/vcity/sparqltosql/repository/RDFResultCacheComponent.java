@@ -0,0 +1,135 @@
+package fr.vcity.sparqltosql.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serialized query results, keyed by the normalized query and the last commit: the quads only change with a new commit.
+ * The cache is bounded by the size of the results (the results larger than <code>max-entry-size</code> aren't kept)
+ * and emptied once an import is over. The hit/miss statistics are published as <code>cache.*</code> metrics.
+ */
+@Slf4j
+@Component
+public class RDFResultCacheComponent {
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, byte[]> resultCache;
+    private final int maxEntrySize;
+    private volatile int idCommit;
+
+    public RDFResultCacheComponent(
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${sparqltosql.query.result-cache.maximum-bytes:67108864}") long maximumBytes,
+            @Value("${sparqltosql.query.result-cache.max-entry-size:1048576}") int maxEntrySize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxEntrySize = maxEntrySize;
+        this.resultCache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, byte[] result) -> key.length() + result.length)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, resultCache, "query_result");
+        Gauge.builder("cache.bytes", resultCache, cache -> cache.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0))
+                        .orElse(0L))
+                .tag("cache", "query_result")
+                .description("The size of the cached results")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads the last commit and empties the cache (the results of the previous commits are no longer requested)
+     */
+    @PostConstruct
+    public void refresh() {
+        Integer lastCommit = jdbcTemplate.queryForObject("SELECT max(id_commit) FROM commit", Integer.class);
+
+        idCommit = lastCommit == null ? 0 : lastCommit;
+        resultCache.invalidateAll();
+        log.info("Emptied the query result cache of the commit {}", idCommit);
+    }
+
+    /**
+     * Writes the cached result of the query, or writes the result and caches it
+     *
+     * @param query        The normalized query (with its result format)
+     * @param outputStream The output of the result
+     * @param writer       The writer of the result, called on a cache miss
+     * @throws IOException if the output failed
+     */
+    public void write(String query, OutputStream outputStream, ResultWriter writer) throws IOException {
+        String key = idCommit + "\n" + query;
+        byte[] result = resultCache.getIfPresent(key);
+
+        if (result != null) {
+            outputStream.write(result);
+            return;
+        }
+
+        CachingOutputStream cachingOutputStream = new CachingOutputStream(outputStream, maxEntrySize);
+        writer.write(cachingOutputStream);
+
+        if (cachingOutputStream.copy != null) {
+            resultCache.put(key, cachingOutputStream.copy.toByteArray());
+        }
+    }
+
+    /**
+     * The writer of a query result
+     */
+    @FunctionalInterface
+    public interface ResultWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Keeps a copy of the written bytes, dropped once it is larger than the maximum size
+     */
+    private static class CachingOutputStream extends FilterOutputStream {
+        private final int maxSize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CachingOutputStream(OutputStream outputStream, int maxSize) {
+            super(outputStream);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy(b, off, len);
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            if (copy.size() + len > maxSize) {
+                copy = null;
+            } else {
+                copy.write(b, off, len);
+            }
+        }
+    }
+}
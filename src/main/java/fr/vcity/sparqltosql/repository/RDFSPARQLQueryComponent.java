@@ -0,0 +1,192 @@
+package fr.vcity.sparqltosql.repository;
+
+import fr.vcity.sparqltosql.dto.SPARQLExplanation;
+import fr.vcity.sparqltosql.model.SQLParameter;
+import fr.vcity.sparqltosql.model.SQLQuery;
+import fr.vcity.sparqltosql.model.SQLVarType;
+import fr.vcity.sparqltosql.utils.RDFTermDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.exec.RowSetStream;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static fr.vcity.sparqltosql.model.SQLQuery.RANK;
+import static fr.vcity.sparqltosql.model.SQLQuery.column;
+
+/**
+ * Runs the SQL queries translated from SPARQL: the constants are resolved to their dictionary ids
+ * before the query runs and the ids of the result variables are decoded last.
+ * The solutions are streamed from a cursor, whatever their number.
+ */
+@Slf4j
+@Component
+public class RDFSPARQLQueryComponent {
+    /**
+     * The id of the constants of the expressions missing from the dictionary (the ids are positive)
+     */
+    private static final int UNKNOWN_TERM_ID = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RDFDictionaryComponent rdfDictionaryComponent;
+    private final RDFQueryExecutionComponent rdfQueryExecutionComponent;
+
+    public RDFSPARQLQueryComponent(
+            JdbcTemplate jdbcTemplate,
+            RDFDictionaryComponent rdfDictionaryComponent,
+            RDFQueryExecutionComponent rdfQueryExecutionComponent
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rdfDictionaryComponent = rdfDictionaryComponent;
+        this.rdfQueryExecutionComponent = rdfQueryExecutionComponent;
+    }
+
+    /**
+     * Runs the query inside a read-only transaction, so that the rows are fetched from a cursor
+     * by batches of <code>spring.jdbc.template.fetch-size</code> while the solutions are consumed.
+     *
+     * @param sqlQuery The translated query
+     * @param consumer The consumer of the solutions (the unbound variables are absent), called inside the transaction
+     */
+    @Transactional(readOnly = true)
+    public void query(SQLQuery sqlQuery, Consumer<RowSet> consumer) {
+        String sql = getDecodedSQL(sqlQuery);
+        log.debug("SQL: {}", sql);
+
+        try (Stream<Binding> bindings = jdbcTemplate.queryForStream(
+                rdfQueryExecutionComponent.prepare(sql, sqlQuery.getParams().stream().map(this::resolve).toArray()),
+                getBindingRowMapper(sqlQuery.getVars())
+        )) {
+            consumer.accept(RowSetStream.create(
+                    sqlQuery.getVars().keySet().stream().map(Var::alloc).toList(),
+                    bindings.iterator()
+            ));
+        }
+    }
+
+    /**
+     * Runs the query with <code>EXPLAIN (ANALYZE, BUFFERS)</code>: the plan holds the actual rows, durations
+     * and buffers of each node. The solutions aren't returned.
+     *
+     * @param sqlQuery    The translated query
+     * @param explanation The explanation receiving the SQL query, its parameters, its plan
+     *                    and the durations of the resolution of the constants and of the execution
+     */
+    @Transactional(readOnly = true)
+    public void explain(SQLQuery sqlQuery, SPARQLExplanation explanation) {
+        String sql = getDecodedSQL(sqlQuery);
+
+        long start = System.nanoTime();
+        List<Object> params = sqlQuery.getParams().stream().map(this::resolve).toList();
+        long resolved = System.nanoTime();
+        List<String> plan = jdbcTemplate.query(
+                rdfQueryExecutionComponent.prepare("EXPLAIN (ANALYZE, BUFFERS) " + sql, params.toArray()),
+                (rs, rowNum) -> rs.getString(1)
+        );
+        long executed = System.nanoTime();
+
+        explanation.setSql(sql);
+        explanation.setParameters(params);
+        explanation.setPlan(plan);
+        explanation.getTimings().put("resolve", (resolved - start) / 1e6);
+        explanation.getTimings().put("execute", (executed - resolved) / 1e6);
+    }
+
+    /**
+     * @param sqlQuery The translated query
+     * @return The query of the names of the terms bound to the variables (decoded from the dictionary)
+     */
+    private static String getDecodedSQL(SQLQuery sqlQuery) {
+        List<String> select = new ArrayList<>();
+
+        for (Map.Entry<String, SQLVarType> var : sqlQuery.getVars().entrySet()) {
+            String column = column(var.getKey());
+
+            // the terms are decoded per returned row
+            select.add(switch (var.getValue()) {
+                case NAMED_GRAPH -> "(SELECT ng.name FROM named_graph ng WHERE ng.id_named_graph = q." + column + ") AS " + column;
+                case TERM -> "(SELECT rl.name FROM resource_or_literal rl WHERE rl.id_resource_or_literal = q." + column + ") AS " + column +
+                        ", (SELECT rl.type FROM resource_or_literal rl WHERE rl.id_resource_or_literal = q." + column + ")";
+                // computed values aren't inside the dictionary
+                case VALIDITY -> "CAST(q." + column + " AS text) AS " + column;
+                case NUMBER -> "CAST(trim_scale(q." + column + ") AS text) AS " + column;
+                case STRING -> "q." + column;
+            });
+        }
+
+        return "SELECT " + String.join(", ", select) + " FROM (" + sqlQuery.getSql() + ") q" +
+                (sqlQuery.isOrdered() ? " ORDER BY q." + RANK : "");
+    }
+
+    /**
+     * @param param The constant of the query
+     * @return The dictionary id of the constant, or <code>null</code> if it doesn't exist (nothing matches it),
+     * or the value of a constant of an expression (its numeric value or its lexical form).
+     * A constant of an expression missing from the dictionary gets the <code>UNKNOWN_TERM_ID</code>:
+     * it is still different from every term (e.g. <code>FILTER(?x != &lt;unknown&gt;)</code> keeps the solutions).
+     */
+    private Object resolve(SQLParameter param) {
+        Node node = param.node();
+
+        if (param.type() == SQLVarType.NUMBER) {
+            return NodeValue.makeNode(node).getDecimal();
+        }
+        if (param.type() == SQLVarType.STRING) {
+            return node.isLiteral() ? node.getLiteralLexicalForm() : node.toString();
+        }
+        if (param.type() == SQLVarType.NAMED_GRAPH) {
+            return rdfDictionaryComponent.findNamedGraphId(node.toString()).orElse(null);
+        }
+        Optional<Integer> id = node.isLiteral()
+                ? rdfDictionaryComponent.findResourceOrLiteralId(node.getLiteralLexicalForm(), node.getLiteralDatatype().toString())
+                : rdfDictionaryComponent.findResourceOrLiteralId(node.toString(), null);
+
+        return id.orElse(param.inExpression() ? UNKNOWN_TERM_ID : null);
+    }
+
+    private static RowMapper<Binding> getBindingRowMapper(Map<String, SQLVarType> vars) {
+        return (rs, rowNum) -> {
+            BindingBuilder binding = Binding.builder();
+            int index = 1;
+
+            for (Map.Entry<String, SQLVarType> var : vars.entrySet()) {
+                String value = rs.getString(index++);
+                String type = var.getValue() == SQLVarType.TERM ? rs.getString(index++) : null;
+
+                if (value != null) {
+                    binding.add(Var.alloc(var.getKey()), toNode(value, type, var.getValue()));
+                }
+            }
+
+            return binding.build();
+        };
+    }
+
+    /**
+     * @param value   The name of the term, or the computed value
+     * @param type    The literal type of the term (<code>null</code> for a resource)
+     * @param varType The domain of the value
+     * @return The RDF term
+     */
+    private static Node toNode(String value, String type, SQLVarType varType) {
+        return switch (varType) {
+            case TERM -> RDFTermDecoder.decodeTerm(value, type);
+            case NAMED_GRAPH -> NodeFactory.createURI(value);
+            case NUMBER -> NodeFactory.createLiteral(value, value.contains(".") ? XSDDatatype.XSDdecimal : XSDDatatype.XSDinteger);
+            case VALIDITY, STRING -> NodeFactory.createLiteral(value);
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package fr.vcity.sparqltosql.repository;
+
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+
+/**
+ * Writes the parsed quads of a file inside the <code>versioned_quad_staging</code> table
+ * through a single PostgreSQL <code>COPY ... FROM STDIN</code> (text format).
+ * The copy ends (and the connection is released) when the writer is closed.
+ */
+public class RDFStagingCopyWriter implements AutoCloseable {
+
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final Writer writer;
+    private final String rowPrefix;
+
+    RDFStagingCopyWriter(DataSource dataSource, Connection connection, PGCopyOutputStream copyOutputStream, Integer idCommit, boolean isAdd) {
+        this.dataSource = dataSource;
+        this.connection = connection;
+        this.writer = new BufferedWriter(new OutputStreamWriter(copyOutputStream, StandardCharsets.UTF_8), 1 << 16);
+        this.rowPrefix = idCommit + "\t" + (isAdd ? "t" : "f") + "\t";
+    }
+
+    /**
+     * Adds a row to the copy
+     *
+     * @param subject    The subject URI
+     * @param property   The property URI
+     * @param object     The object URI or literal value
+     * @param objectType The object literal type (<code>null</code> for a resource)
+     * @param namedGraph The named graph URI
+     * @throws IOException if the copy failed
+     */
+    public void write(String subject, String property, String object, String objectType, String namedGraph) throws IOException {
+        writer.write(rowPrefix);
+        writeField(subject);
+        writer.write('\t');
+        writeField(property);
+        writer.write('\t');
+        writeField(object);
+        writer.write('\t');
+        writeField(objectType);
+        writer.write('\t');
+        writeField(namedGraph);
+        writer.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Escapes the value following the COPY text format
+     *
+     * @param value The value
+     * @throws IOException if the copy failed
+     */
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            writer.write("\\N");
+            return;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> writer.write("\\\\");
+                case '\t' -> writer.write("\\t");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                default -> writer.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package fr.vcity.sparqltosql.repository;
+
+import fr.vcity.sparqltosql.model.RDFStatistics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cardinalities of the properties (number of quads, distinct subjects and distinct objects), by named graph
+ * and for all the named graphs. They are computed after each import inside the <code>property_statistics</code> table
+ * and kept in memory to order the joins of the translated SPARQL queries.
+ */
+@Slf4j
+@Component
+public class RDFStatisticsComponent {
+    private final JdbcTemplate jdbcTemplate;
+    private volatile RDFStatistics statistics = RDFStatistics.EMPTY;
+
+    public RDFStatisticsComponent(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return The last refreshed statistics
+     */
+    public RDFStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Computes the statistics of the quads and the planner statistics of <code>versioned_quad</code>
+     */
+    @Transactional
+    public void refresh() {
+        jdbcTemplate.update("DELETE FROM property_statistics");
+        jdbcTemplate.update("""
+                INSERT INTO property_statistics (id_property, id_named_graph, quad_count, distinct_subjects, distinct_objects)
+                SELECT v.id_property, v.id_named_graph, count(*), count(DISTINCT v.id_subject), count(DISTINCT v.id_object)
+                    FROM versioned_quad v
+                    GROUP BY GROUPING SETS ((v.id_property, v.id_named_graph), (v.id_property))
+                """);
+        jdbcTemplate.execute("ANALYZE versioned_quad");
+        load();
+    }
+
+    /**
+     * Loads the statistics computed by the last refresh
+     */
+    @PostConstruct
+    public void load() {
+        Map<RDFStatistics.Key, RDFStatistics.Cardinality> cardinalities = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT rl.name, ng.name, s.quad_count, s.distinct_subjects, s.distinct_objects
+                    FROM property_statistics s
+                    JOIN resource_or_literal rl ON rl.id_resource_or_literal = s.id_property
+                    LEFT JOIN named_graph ng ON ng.id_named_graph = s.id_named_graph
+                """, rs -> {
+            cardinalities.put(
+                    new RDFStatistics.Key(rs.getString(1), rs.getString(2)),
+                    new RDFStatistics.Cardinality(rs.getLong(3), rs.getLong(4), rs.getLong(5))
+            );
+        });
+        Long quadCount = jdbcTemplate.queryForObject("SELECT count(*) FROM versioned_quad", Long.class);
+
+        statistics = new RDFStatistics(statistics.getVersion() + 1, quadCount == null ? 0 : quadCount, cardinalities);
+        log.info("Refreshed the statistics of {} properties and named graphs", cardinalities.size());
+    }
+}
@@ -1,107 +1,277 @@
 package fr.vcity.sparqltosql.repository;
 
+import fr.vcity.sparqltosql.dao.RDFVersionedQuad;
 import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+import fr.vcity.sparqltosql.model.QuadCursor;
+import fr.vcity.sparqltosql.model.QuadPage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 @Component
 public class RDFVersionedQuadComponent {
     private final JdbcTemplate jdbcTemplate;
+    private final IRDFValidityStorage rdfValidityStorage;
+    private final RDFQueryExecutionComponent rdfQueryExecutionComponent;
+    private final int batchSize;
 
-    public RDFVersionedQuadComponent(JdbcTemplate jdbcTemplate) {
+    public RDFVersionedQuadComponent(
+            JdbcTemplate jdbcTemplate,
+            IRDFValidityStorage rdfValidityStorage,
+            RDFQueryExecutionComponent rdfQueryExecutionComponent,
+            @Value("${sparqltosql.import.batch-size:1000}") int batchSize
+    ) {
         this.jdbcTemplate = jdbcTemplate;
+        this.rdfValidityStorage = rdfValidityStorage;
+        this.rdfQueryExecutionComponent = rdfQueryExecutionComponent;
+        this.batchSize = batchSize;
     }
 
-    public List<RDFCompleteVersionedQuad> findAll() {
-        return jdbcTemplate.query("""
-                        SELECT rls.name, rlp.name, rlo.name, ng.name, v.validity
-                            FROM versioned_quad v LEFT JOIN resource_or_literal rls ON rls.id_resource_or_literal = v.id_subject
-                            LEFT JOIN resource_or_literal rlp ON rlp.id_resource_or_literal = v.id_property
-                            LEFT JOIN resource_or_literal rlo ON rlo.id_resource_or_literal = v.id_object
-                            LEFT JOIN named_graph ng ON ng.id_named_graph = v.id_named_graph
-                                """,
-                getRdfCompleteVersionedQuadRowMapper()
-        );
+    /**
+     * Streams the quads from a cursor (inside a read-only transaction)
+     *
+     * @param consumer The consumer of the quads, called inside the transaction
+     */
+    @Transactional(readOnly = true)
+    public void findAll(Consumer<RDFCompleteVersionedQuad> consumer) {
+        jdbcTemplate.query(rdfQueryExecutionComponent.prepare(getAllQuery()), getRowCallbackHandler(consumer));
     }
 
-    public List<RDFCompleteVersionedQuad> findAllByValidity(String validity) {
-        // FIXME : SQL injection !
-        String query = String.format("""
-                SELECT rls.name, rlp.name, rlo.name, ng.name, v.validity
-                    FROM versioned_quad v LEFT JOIN resource_or_literal rls ON rls.id_resource_or_literal = v.id_subject
-                    LEFT JOIN resource_or_literal rlp ON rlp.id_resource_or_literal = v.id_property
-                    LEFT JOIN resource_or_literal rlo ON rlo.id_resource_or_literal = v.id_object
-                    LEFT JOIN named_graph ng ON ng.id_named_graph = v.id_named_graph
-                    WHERE v.validity = B'%s'
-                """, validity);
-        return jdbcTemplate.query(query,
-                getRdfCompleteVersionedQuadRowMapper()
-        );
+    /**
+     * Streams the quads with the validity from a cursor (inside a read-only transaction)
+     *
+     * @param validity The validity bit string
+     * @param consumer The consumer of the quads, called inside the transaction
+     */
+    @Transactional(readOnly = true)
+    public void findAllByValidity(String validity, Consumer<RDFCompleteVersionedQuad> consumer) {
+        jdbcTemplate.query(rdfQueryExecutionComponent.prepare(getAllByValidityQuery(), validity), getRowCallbackHandler(consumer));
+    }
+
+    /**
+     * Streams the quads valid in the version from a cursor (inside a read-only transaction)
+     *
+     * @param requestedVersion The version index
+     * @param consumer         The consumer of the quads, called inside the transaction
+     */
+    @Transactional(readOnly = true)
+    public void findAllByVersion(Integer requestedVersion, Consumer<RDFCompleteVersionedQuad> consumer) {
+        jdbcTemplate.query(rdfQueryExecutionComponent.prepare(getAllByVersionQuery(requestedVersion)), getRowCallbackHandler(consumer));
     }
 
-    public List<RDFCompleteVersionedQuad> findAllByVersion(Integer requestedVersion) {
-        // FIXME : SQL injection !
-        String query = String.format("""
-                SELECT rls.name, rlp.name, rlo.name, ng.name, v.validity
-                    FROM versioned_quad v LEFT JOIN resource_or_literal rls ON rls.id_resource_or_literal = v.id_subject
-                    LEFT JOIN resource_or_literal rlp ON rlp.id_resource_or_literal = v.id_property
-                    LEFT JOIN resource_or_literal rlo ON rlo.id_resource_or_literal = v.id_object
-                    LEFT JOIN named_graph ng ON ng.id_named_graph = v.id_named_graph
-                    WHERE get_bit(v.validity, %s) = 1
-                """, requestedVersion);
-        return jdbcTemplate.query(query,
-                getRdfCompleteVersionedQuadRowMapper()
+    /**
+     * Streams the quads whose validity differs between the two versions from a cursor (inside a read-only transaction),
+     * in a single scan of <code>versioned_quad</code>. The validity bit string is only computed for the changed quads.
+     *
+     * @param fromVersion The index of the first version
+     * @param toVersion   The index of the second version
+     * @param isAdd       <code>true</code> for the added quads only, <code>false</code> for the removed ones only,
+     *                    <code>null</code> for both
+     * @param consumer    The consumer of the quads and of their change (<code>true</code> if the quad is added
+     *                    in the second version, <code>false</code> if it is removed), called inside the transaction
+     */
+    @Transactional(readOnly = true)
+    public void findAllChanges(Integer fromVersion, Integer toVersion, Boolean isAdd, BiConsumer<RDFCompleteVersionedQuad, Boolean> consumer) {
+        // the validity in each version is computed once per quad: OFFSET 0 keeps the planner from inlining the flags
+        // into each of their uses
+        String sql = decode("""
+                SELECT c.id_subject, c.id_property, c.id_object, c.id_named_graph, %1$s AS validity, c.in_to AS is_add
+                    FROM (
+                        SELECT v.*, %2$s AS in_from, %3$s AS in_to
+                            FROM versioned_quad v
+                            OFFSET 0
+                    ) c
+                    WHERE c.in_from <> c.in_to
+                    %4$s
+                """.formatted(
+                rdfValidityStorage.getValidityExpression("c"),
+                rdfValidityStorage.getVersionCondition("v", fromVersion),
+                rdfValidityStorage.getVersionCondition("v", toVersion),
+                isAdd == null ? "" : "AND c.in_to = ?"
+        ), "q.is_add");
+        RowMapper<RDFCompleteVersionedQuad> rowMapper = getRdfCompleteVersionedQuadRowMapper();
+
+        jdbcTemplate.query(
+                rdfQueryExecutionComponent.prepare(sql, isAdd == null ? new Object[0] : new Object[]{isAdd}),
+                (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow()), rs.getBoolean(11))
         );
     }
 
-    public void saveAdd(
-            Integer idSubject,
-            Integer idProperty,
-            Integer idObject,
-            Integer idNamedGraph,
-            Integer length
-    ) {
-        // FIXME : SQL injection !
-        String query = String.format("""
-                INSERT INTO versioned_quad (id_subject, id_property, id_object, id_named_graph, validity)
-                VALUES (%s, %s, %s, %s, (
-                SELECT LPAD('', %s, '0')::bit varying || B'1'
-                ) )
-                ON CONFLICT ON CONSTRAINT versioned_quad_pkey
-                DO UPDATE SET validity = versioned_quad.validity || B'1';
-                """, idSubject, idProperty, idObject, idNamedGraph, length);
-        jdbcTemplate.execute(query);
-    }
-
-    public void saveRemove(
-            Integer idSubject,
-            Integer idProperty,
-            Integer idObject,
-            Integer idNamedGraph,
-            Integer length
-    ) {
-        // FIXME : SQL injection !
-        String query = String.format("""
-                INSERT INTO versioned_quad (id_subject, id_property, id_object, id_named_graph, validity)
-                VALUES (%s, %s, %s, %s, (
-                SELECT LPAD('', %s, '0')::bit varying || B'0'
-                ) )
-                ON CONFLICT ON CONSTRAINT versioned_quad_pkey
-                DO UPDATE SET validity = versioned_quad.validity || B'0';
-                """, idSubject, idProperty, idObject, idNamedGraph, length);
-        jdbcTemplate.execute(query);
+    /**
+     * @param after The cursor of the previous page
+     * @param limit The maximum number of quads of the page
+     * @return The page of quads after the cursor
+     */
+    public QuadPage findPage(QuadCursor after, int limit) {
+        return findPage("TRUE", after, limit);
+    }
+
+    /**
+     * @param validity The validity bit string
+     * @param after    The cursor of the previous page
+     * @param limit    The maximum number of quads of the page
+     * @return The page of quads with the validity after the cursor
+     */
+    public QuadPage findPageByValidity(String validity, QuadCursor after, int limit) {
+        return findPage(rdfValidityStorage.getValidityParameterCondition("v"), after, limit, validity);
+    }
+
+    /**
+     * @param requestedVersion The version index
+     * @param after            The cursor of the previous page
+     * @param limit            The maximum number of quads of the page
+     * @return The page of quads valid in the version after the cursor
+     */
+    public QuadPage findPageByVersion(Integer requestedVersion, QuadCursor after, int limit) {
+        return findPage(rdfValidityStorage.getVersionCondition("v", requestedVersion), after, limit);
+    }
+
+    /**
+     * Upserts the quads by batches of <code>batchSize</code> statements, setting their validity for the new version.
+     * The quads whose validity doesn't change aren't written, and neither are the quads absent from the import.
+     *
+     * @param quads  The quads (only the subject, property, object and named graph ids are used)
+     * @param isAdd  <code>true</code> if the quads are valid in the new version, <code>false</code> otherwise
+     * @param length The index of the new version
+     */
+    public void saveAll(List<RDFVersionedQuad> quads, boolean isAdd, Integer length) {
+        jdbcTemplate.batchUpdate(rdfValidityStorage.getUpsertQuery(isAdd, length), quads, batchSize, (ps, quad) -> {
+            ps.setInt(1, quad.getIdSubject());
+            ps.setInt(2, quad.getIdProperty());
+            ps.setInt(3, quad.getIdObject());
+            ps.setInt(4, quad.getIdNamedGraph());
+        });
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    private String getAllQuery() {
+        return decode("""
+                SELECT v.id_subject, v.id_property, v.id_object, v.id_named_graph, %s AS validity
+                    FROM versioned_quad v
+                """.formatted(rdfValidityStorage.getValidityExpression("v")));
+    }
+
+    private String getAllByValidityQuery() {
+        return decode("""
+                SELECT v.id_subject, v.id_property, v.id_object, v.id_named_graph, %s AS validity
+                    FROM versioned_quad v
+                    WHERE %s
+                """.formatted(
+                rdfValidityStorage.getValidityExpression("v"),
+                rdfValidityStorage.getValidityParameterCondition("v")
+        ));
+    }
+
+    private String getAllByVersionQuery(Integer requestedVersion) {
+        return decode("""
+                SELECT v.id_subject, v.id_property, v.id_object, v.id_named_graph, %s AS validity
+                    FROM versioned_quad v
+                    WHERE %s
+                """.formatted(
+                rdfValidityStorage.getValidityExpression("v"),
+                rdfValidityStorage.getVersionCondition("v", requestedVersion)
+        ));
+    }
+
+    /**
+     * Reads the page with a range scan of the primary key: one more quad is read to know if there is a next page.
+     *
+     * @param condition The condition of the quads (on the <code>v</code> alias)
+     * @param after     The cursor of the previous page
+     * @param limit     The maximum number of quads of the page
+     * @param args      The arguments of the condition
+     * @return The page of quads after the cursor
+     */
+    private QuadPage findPage(String condition, QuadCursor after, int limit, Object... args) {
+        String sql = decode("""
+                SELECT v.id_subject, v.id_property, v.id_object, v.id_named_graph, %s AS validity
+                    FROM versioned_quad v
+                    WHERE (v.id_object, v.id_property, v.id_subject, v.id_named_graph) > (?, ?, ?, ?)
+                    AND %s
+                    ORDER BY v.id_object, v.id_property, v.id_subject, v.id_named_graph
+                    LIMIT ?
+                """.formatted(rdfValidityStorage.getValidityExpression("v"), condition)
+        ) + "ORDER BY q.id_object, q.id_property, q.id_subject, q.id_named_graph";
+        List<Object> params = new ArrayList<>(List.of(after.idObject(), after.idProperty(), after.idSubject(), after.idNamedGraph()));
+        params.addAll(List.of(args));
+        params.add(limit + 1);
+
+        RowMapper<RDFCompleteVersionedQuad> rowMapper = getRdfCompleteVersionedQuadRowMapper();
+
+        return jdbcTemplate.query(rdfQueryExecutionComponent.prepare(sql, params.toArray()), rs -> {
+            List<RDFCompleteVersionedQuad> quads = new ArrayList<>();
+            QuadCursor last = null;
+
+            while (rs.next()) {
+                if (quads.size() == limit) {
+                    return new QuadPage(quads, last);
+                }
+
+                quads.add(rowMapper.mapRow(rs, quads.size()));
+                last = new QuadCursor(rs.getInt(7), rs.getInt(8), rs.getInt(9), rs.getInt(10));
+            }
+
+            return new QuadPage(quads, null);
+        });
+    }
+
+    /**
+     * Decodes the quads once they are selected: the selection only reads the ids of <code>versioned_quad</code>
+     * and the names (i.e. large GML literals) are only read for the returned quads.
+     *
+     * @param quadQuery The query of the selected quads (the <code>versioned_quad</code> columns and their <code>validity</code>)
+     * @return The query of the decoded quads
+     */
+    private static String decode(String quadQuery) {
+        return decode(quadQuery, "NULL");
+    }
+
+    /**
+     * @param quadQuery   The query of the selected quads (the <code>versioned_quad</code> columns and their <code>validity</code>)
+     * @param extraColumn The other column of the selected quads (on the <code>q</code> alias), returned last
+     * @return The query of the decoded quads
+     */
+    private static String decode(String quadQuery, String extraColumn) {
+        return """
+                SELECT rls.name, rlp.name, rlo.name, ng.name, q.validity, rlo.type,
+                    q.id_object, q.id_property, q.id_subject, q.id_named_graph, %s
+                    FROM (%s) q
+                    LEFT JOIN resource_or_literal rls ON rls.id_resource_or_literal = q.id_subject
+                    LEFT JOIN resource_or_literal rlp ON rlp.id_resource_or_literal = q.id_property
+                    LEFT JOIN resource_or_literal rlo ON rlo.id_resource_or_literal = q.id_object
+                    LEFT JOIN named_graph ng ON ng.id_named_graph = q.id_named_graph
+                """.formatted(extraColumn, quadQuery);
+    }
+
+    private static RowCallbackHandler getRowCallbackHandler(Consumer<RDFCompleteVersionedQuad> consumer) {
+        RowMapper<RDFCompleteVersionedQuad> rowMapper = getRdfCompleteVersionedQuadRowMapper();
+
+        return rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow()));
     }
 
     private static RowMapper<RDFCompleteVersionedQuad> getRdfCompleteVersionedQuadRowMapper() {
-        return (rs, rowNum) -> new RDFCompleteVersionedQuad(
-                rs.getString(1),
-                rs.getString(2),
-                rs.getString(3),
-                rs.getString(4),
-                rs.getBytes(5)
-        );
+        return (rs, rowNum) -> {
+            RDFCompleteVersionedQuad quad = new RDFCompleteVersionedQuad(
+                    rs.getString(1),
+                    rs.getString(2),
+                    rs.getString(3),
+                    rs.getString(4),
+                    rs.getBytes(5)
+            );
+            quad.setObjectType(rs.getString(6));
+
+            return quad;
+        };
     }
 }
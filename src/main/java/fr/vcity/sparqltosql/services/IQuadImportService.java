@@ -6,11 +6,11 @@ import java.util.List;
 
 public interface IQuadImportService {
 
-    void importModelToAdd(List<MultipartFile> files);
+    void importModelToAdd(List<MultipartFile> files, boolean bulk);
 
-    void importModelToRemove(List<MultipartFile> files);
+    void importModelToRemove(List<MultipartFile> files, boolean bulk);
 
     void resetDatabase();
 
-    void importModelToRemoveAndAdd(List<MultipartFile> files);
+    void importModelToRemoveAndAdd(List<MultipartFile> files, boolean bulk);
 }
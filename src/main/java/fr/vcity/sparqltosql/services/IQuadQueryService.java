@@ -1,13 +1,34 @@
 package fr.vcity.sparqltosql.services;
 
 import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+import fr.vcity.sparqltosql.dto.SPARQLExplanation;
+import fr.vcity.sparqltosql.model.QuadCursor;
+import fr.vcity.sparqltosql.model.QuadPage;
+import fr.vcity.sparqltosql.repository.RDFResultCacheComponent;
+import org.apache.jena.riot.Lang;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface IQuadQueryService {
-    List<RDFCompleteVersionedQuad> queryRequestedValidity(String requestedVersions);
+    void queryRequestedValidity(String requestedValidity, OutputStream outputStream) throws IOException;
 
-    List<RDFCompleteVersionedQuad> queryRequestedVersion(Integer requestedVersion);
+    void queryRequestedVersion(Integer requestedVersion, OutputStream outputStream) throws IOException;
 
-    List<RDFCompleteVersionedQuad> querySPARQL(String queryString);
+    void queryRequestedValidity(String requestedValidity, Lang lang, OutputStream outputStream) throws IOException;
+
+    void queryRequestedVersion(Integer requestedVersion, Lang lang, OutputStream outputStream) throws IOException;
+
+    QuadPage queryRequestedValidity(String requestedValidity, QuadCursor after, int limit);
+
+    QuadPage queryRequestedVersion(Integer requestedVersion, QuadCursor after, int limit);
+
+    void writeQuads(List<RDFCompleteVersionedQuad> quads, Lang lang, OutputStream outputStream) throws IOException;
+
+    void queryVersionDiff(Integer fromVersion, Integer toVersion, Boolean isAdd, OutputStream outputStream) throws IOException;
+
+    RDFResultCacheComponent.ResultWriter querySPARQL(String queryString, Lang lang);
+
+    SPARQLExplanation explainSPARQL(String queryString);
 }
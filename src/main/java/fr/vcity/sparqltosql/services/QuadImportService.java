@@ -1,23 +1,30 @@
 package fr.vcity.sparqltosql.services;
 
+import fr.vcity.sparqltosql.dao.RDFCommit;
 import fr.vcity.sparqltosql.dao.RDFNamedGraph;
 import fr.vcity.sparqltosql.dao.RDFResourceOrLiteral;
+import fr.vcity.sparqltosql.dao.RDFVersionedQuad;
 import fr.vcity.sparqltosql.exceptions.FileException;
 import fr.vcity.sparqltosql.model.RDFSavedQuad;
 import fr.vcity.sparqltosql.repository.*;
+import fr.vcity.sparqltosql.utils.QuadImportStreamRDF;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.jena.query.Dataset;
-import org.apache.jena.rdf.model.*;
+import org.apache.jena.graph.Node;
 import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.system.ErrorHandlerFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,19 +36,42 @@ public class QuadImportService implements IQuadImportService {
     IRDFNamedGraphRepository rdfNamedGraphRepository;
     IRDFCommitRepository rdfCommitRepository;
     RDFVersionedQuadComponent rdfVersionedQuadComponent;
+    RDFDictionaryComponent rdfDictionaryComponent;
+    RDFBulkImportComponent rdfBulkImportComponent;
+    RDFStatisticsComponent rdfStatisticsComponent;
+    RDFResultCacheComponent rdfResultCacheComponent;
+    ExecutorService importExecutor;
+    int queueCapacity;
 
     public QuadImportService(
             IRDFResourceOrLiteralRepository rdfResourceRepository,
             IRDFVersionedQuadRepository rdfVersionedQuadRepository,
             IRDFNamedGraphRepository rdfNamedGraphRepository,
             IRDFCommitRepository rdfCommitRepository,
-            RDFVersionedQuadComponent rdfVersionedQuadComponent
+            RDFVersionedQuadComponent rdfVersionedQuadComponent,
+            RDFDictionaryComponent rdfDictionaryComponent,
+            RDFBulkImportComponent rdfBulkImportComponent,
+            RDFStatisticsComponent rdfStatisticsComponent,
+            RDFResultCacheComponent rdfResultCacheComponent,
+            @Value("${sparqltosql.import.parser-threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int parserThreads,
+            @Value("${sparqltosql.import.queue-capacity:16}") int queueCapacity
     ) {
         this.rdfResourceRepository = rdfResourceRepository;
         this.rdfVersionedQuadRepository = rdfVersionedQuadRepository;
         this.rdfNamedGraphRepository = rdfNamedGraphRepository;
         this.rdfVersionedQuadComponent = rdfVersionedQuadComponent;
         this.rdfCommitRepository = rdfCommitRepository;
+        this.rdfDictionaryComponent = rdfDictionaryComponent;
+        this.rdfBulkImportComponent = rdfBulkImportComponent;
+        this.rdfStatisticsComponent = rdfStatisticsComponent;
+        this.rdfResultCacheComponent = rdfResultCacheComponent;
+        this.importExecutor = Executors.newFixedThreadPool(parserThreads);
+        this.queueCapacity = queueCapacity;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        importExecutor.shutdownNow();
     }
 
     /**
@@ -49,52 +79,16 @@ public class QuadImportService implements IQuadImportService {
      * <br />Predefined values for <code>lang</code> are "TRIG" and "NQUADS"
      *
      * @param files The input files
+     * @param bulk  <code>true</code> to load the quads with the PostgreSQL COPY bulk mode
      */
     @Override
-    public void importModelToAdd(List<MultipartFile> files) {
-        Integer maxLength = rdfVersionedQuadRepository.getMaxValidity();
+    public void importModelToAdd(List<MultipartFile> files, boolean bulk) {
         List<MultipartFile> fileList = files
                 .stream()
                 .filter(file -> !file.isEmpty())
                 .collect(Collectors.toList());
-        rdfCommitRepository.save(summarizeImport(fileList, "add"));
-
-        fileList.forEach(file -> {
-            log.info("Current file: {}", file.getOriginalFilename());
-
-            try (InputStream inputStream = file.getInputStream()) {
-                Dataset dataset =
-                        RDFParser.create()
-                                .source(inputStream)
-                                .lang(RDFLanguages.nameToLang(FilenameUtils.getExtension(file.getOriginalFilename())))
-                                .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
-                                .toDataset();
-
-                importDefaultModel(dataset.getDefaultModel(), "add", maxLength);
-
-                for (Iterator<Resource> i = dataset.listModelNames(); i.hasNext(); ) {
-                    Resource namedModel = i.next();
-                    Model model = dataset.getNamedModel(namedModel);
-                    log.debug("Name Graph : {}", namedModel.getURI());
-
-                    for (StmtIterator s = model.listStatements(); s.hasNext(); ) {
-                        RDFSavedQuad rdfSavedQuad = getRDFSavedQuad(s.nextStatement(), namedModel.getURI());
-
-                        rdfVersionedQuadComponent.saveAdd(
-                                rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
-                                rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
-                                rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
-                                rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
-                                maxLength == null ? 0 : maxLength + 1
-                        );
-                    }
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
 
-        rdfVersionedQuadRepository.updateValidityVersionedQuad();
+        importFiles(fileList, "add", bulk);
     }
 
     /**
@@ -102,123 +96,33 @@ public class QuadImportService implements IQuadImportService {
      * <br />Predefined values for <code>lang</code> are "TRIG" and "NQUADS"
      *
      * @param files The input files
+     * @param bulk  <code>true</code> to load the quads with the PostgreSQL COPY bulk mode
      */
     @Override
-    public void importModelToRemove(List<MultipartFile> files) {
-        Integer maxLength = rdfVersionedQuadRepository.getMaxValidity();
+    public void importModelToRemove(List<MultipartFile> files, boolean bulk) {
         List<MultipartFile> fileList = files
                 .stream()
                 .filter(file -> !file.isEmpty())
                 .collect(Collectors.toList());
-        rdfCommitRepository.save(summarizeImport(fileList, "remove"));
-
-        fileList.forEach(file -> {
-            log.info("Current file: {}", file.getOriginalFilename());
-
-            try (InputStream inputStream = file.getInputStream()) {
-                Dataset dataset =
-                        RDFParser.create()
-                                .source(inputStream)
-                                .lang(RDFLanguages.nameToLang(FilenameUtils.getExtension(file.getOriginalFilename())))
-                                .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
-                                .toDataset();
-
-                importDefaultModel(dataset.getDefaultModel(), "remove", maxLength);
-
-                for (Iterator<Resource> i = dataset.listModelNames(); i.hasNext(); ) {
-                    Resource namedModel = i.next();
-                    Model model = dataset.getNamedModel(namedModel);
-                    log.debug("Name Graph : {}", namedModel.getURI());
-
-                    for (StmtIterator s = model.listStatements(); s.hasNext(); ) {
-                        RDFSavedQuad rdfSavedQuad = getRDFSavedQuad(s.nextStatement(), namedModel.getURI());
-
-                        rdfVersionedQuadComponent.saveRemove(
-                                rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
-                                rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
-                                rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
-                                rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
-                                maxLength == null ? 0 : maxLength + 1
-                        );
-                    }
-                }
-
 
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-
-        rdfVersionedQuadRepository.updateValidityVersionedQuad();
+        importFiles(fileList, "remove", bulk);
     }
 
     /**
      * Import RDF statements inside the <code>files</code>
      *
      * @param files The input files
+     * @param bulk  <code>true</code> to load the quads with the PostgreSQL COPY bulk mode
      */
     @Override
-    public void importModelToRemoveAndAdd(List<MultipartFile> files) {
-        Integer maxLength = rdfVersionedQuadRepository.getMaxValidity();
+    public void importModelToRemoveAndAdd(List<MultipartFile> files, boolean bulk) {
         List<MultipartFile> fileList = files
                 .stream()
                 .filter(file -> !file.isEmpty())
                 .sorted(getRemoveAddFileComparator())
                 .collect(Collectors.toList());
-        rdfCommitRepository.save(summarizeImport(fileList, "remove-add"));
-
-        fileList.forEach(file -> {
-            log.info("Current file: {}", file.getOriginalFilename());
-
-            try (InputStream inputStream = file.getInputStream()) {
-                Dataset dataset =
-                        RDFParser.create()
-                                .source(inputStream)
-                                .lang(RDFLanguages.nameToLang(FilenameUtils.getExtension(file.getOriginalFilename())))
-                                .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
-                                .toDataset();
-
-                if (file.getOriginalFilename().contains("add")) {
-                    importDefaultModel(dataset.getDefaultModel(), "add", maxLength);
-                } else if (file.getOriginalFilename().contains("remove")) {
-                    importDefaultModel(dataset.getDefaultModel(), "remove", maxLength);
-                } else {
-                    throw new FileException("The file: " + file.getOriginalFilename() + " doesn't contain 'add' or 'remove'");
-                }
 
-                for (Iterator<Resource> i = dataset.listModelNames(); i.hasNext(); ) {
-                    Resource namedModel = i.next();
-                    Model model = dataset.getNamedModel(namedModel);
-                    log.debug("Name Graph : {}", namedModel.getURI());
-
-                    for (StmtIterator s = model.listStatements(); s.hasNext(); ) {
-                        RDFSavedQuad rdfSavedQuad = getRDFSavedQuad(s.nextStatement(), namedModel.getURI());
-
-                        if (file.getOriginalFilename().contains("add")) {
-                            rdfVersionedQuadComponent.saveAdd(
-                                    rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
-                                    rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
-                                    rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
-                                    rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
-                                    maxLength == null ? 0 : maxLength + 1
-                            );
-                        } else {
-                            rdfVersionedQuadComponent.saveRemove(
-                                    rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
-                                    rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
-                                    rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
-                                    rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
-                                    maxLength == null ? 0 : maxLength + 1
-                            );
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                throw new FileException("Failed to store file.", e);
-            }
-        });
-
-        rdfVersionedQuadRepository.updateValidityVersionedQuad();
+        importFiles(fileList, "remove-add", bulk);
     }
 
     /**
@@ -230,6 +134,9 @@ public class QuadImportService implements IQuadImportService {
         rdfResourceRepository.deleteAll();
         rdfNamedGraphRepository.deleteAll();
         rdfCommitRepository.deleteAll();
+        rdfDictionaryComponent.clear();
+        rdfStatisticsComponent.refresh();
+        rdfResultCacheComponent.refresh();
     }
 
     /**
@@ -247,52 +154,289 @@ public class QuadImportService implements IQuadImportService {
     }
 
     /**
-     * Import RDF default model statements
+     * Imports the files as a new version.
+     * The files are parsed in parallel by the import worker pool while the quads are written file after file,
+     * following the order of <code>fileList</code>, so that the result of the version doesn't depend on the scheduling.
+     * The statistics of the quads are refreshed once the version is written (or has failed), and the cached query results are dropped.
      *
-     * @param defaultModel The default graph
-     * @param action       The action (add or remove)
-     * @param maxLength    The size of the bit string
+     * @param fileList   The non empty files
+     * @param actionType The action type (add, remove or remove-add)
+     * @param bulk       <code>true</code> to load the quads with the PostgreSQL COPY bulk mode
      */
-    private void importDefaultModel(Model defaultModel, String action, Integer maxLength) {
-        for (StmtIterator s = defaultModel.listStatements(); s.hasNext(); ) {
-            RDFSavedQuad rdfSavedQuad = getRDFSavedQuad(s.nextStatement(), "default");
-
-            if (action.equals("remove")) {
-                rdfVersionedQuadComponent.saveRemove(
-                        rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
-                        rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
-                        rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
-                        rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
-                        maxLength == null ? 0 : maxLength + 1
-                );
+    private void importFiles(List<MultipartFile> fileList, String actionType, boolean bulk) {
+        List<String> actions = fileList
+                .stream()
+                .map(file -> getFileAction(file, actionType))
+                .toList();
+        Integer length = getVersionLength();
+        RDFCommit rdfCommit = rdfCommitRepository.save(summarizeImport(fileList, actionType));
+
+        try {
+            if (bulk) {
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+
+                    for (int i = 0; i < fileList.size(); i++) {
+                        MultipartFile file = fileList.get(i);
+                        String action = actions.get(i);
+                        futures.add(importExecutor.submit(() -> copyFile(file, action, rdfCommit.getIdCommit())));
+                    }
+
+                    awaitAll(futures);
+                    rdfBulkImportComponent.mergeStaging(rdfCommit.getIdCommit(), length);
+                } catch (RuntimeException e) {
+                    rdfBulkImportComponent.deleteStaging(rdfCommit.getIdCommit());
+                    throw e;
+                }
             } else {
-                rdfVersionedQuadComponent.saveAdd(
-                        rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
-                        rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
-                        rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
-                        rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
-                        maxLength == null ? 0 : maxLength + 1
-                );
+                List<BlockingQueue<List<RDFVersionedQuad>>> queues = new ArrayList<>();
+                List<Future<?>> futures = new ArrayList<>();
+
+                for (MultipartFile file : fileList) {
+                    BlockingQueue<List<RDFVersionedQuad>> queue = new ArrayBlockingQueue<>(queueCapacity);
+                    queues.add(queue);
+                    futures.add(importExecutor.submit(() -> parseFile(file, queue)));
+                }
+
+                try {
+                    for (int i = 0; i < fileList.size(); i++) {
+                        writeFile(fileList.get(i), queues.get(i), actions.get(i), length);
+                        await(futures.get(i));
+                    }
+                } finally {
+                    futures.forEach(future -> future.cancel(true));
+                }
             }
+        } finally {
+            // also after a failed import: its committed quads are visible
+            rdfStatisticsComponent.refresh();
+            rdfResultCacheComponent.refresh();
+        }
+    }
+
+    /**
+     * Returns the action to apply on the quads of the file
+     *
+     * @param file       The input file
+     * @param actionType The action type (add, remove or remove-add)
+     * @return The action (add or remove)
+     */
+    private static String getFileAction(MultipartFile file, String actionType) {
+        if (!actionType.equals("remove-add")) {
+            return actionType;
+        } else if (file.getOriginalFilename().contains("add")) {
+            return "add";
+        } else if (file.getOriginalFilename().contains("remove")) {
+            return "remove";
+        }
+
+        throw new FileException("The file: " + file.getOriginalFilename() + " doesn't contain 'add' or 'remove'");
+    }
+
+    /**
+     * Returns the index of the new version inside the validity bit strings
+     *
+     * @return The number of existing versions
+     */
+    private Integer getVersionLength() {
+        return Math.toIntExact(rdfCommitRepository.count());
+    }
+
+    /**
+     * Parses the file as a stream and copies the quads inside the staging table while they are read
+     *
+     * @param file     The input file
+     * @param action   The action (add or remove)
+     * @param idCommit The commit of the import
+     */
+    private void copyFile(MultipartFile file, String action, Integer idCommit) {
+        log.info("Current file (bulk): {}", file.getOriginalFilename());
+
+        try (InputStream inputStream = file.getInputStream();
+             RDFStagingCopyWriter writer = rdfBulkImportComponent.openStagingWriter(idCommit, !action.equals("remove"))) {
+            RDFParser.create()
+                    .source(inputStream)
+                    .lang(RDFLanguages.nameToLang(FilenameUtils.getExtension(file.getOriginalFilename())))
+                    .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
+                    .parse(new QuadImportStreamRDF(quad -> stageQuad(writer, quad)));
+        } catch (IOException | SQLException e) {
+            throw new FileException("Failed to store file.", e);
         }
     }
 
+    /**
+     * Copies the quad terms inside the staging table
+     *
+     * @param writer The staging table writer
+     * @param quad   The parsed quad
+     */
+    private static void stageQuad(RDFStagingCopyWriter writer, Quad quad) {
+        Node object = quad.getObject();
+
+        try {
+            writer.write(
+                    quad.getSubject().toString(),
+                    quad.getPredicate().toString(),
+                    object.isLiteral() ? object.getLiteralLexicalForm() : object.toString(),
+                    object.isLiteral() ? object.getLiteralDatatype().toString() : null,
+                    getNamedGraphName(quad)
+            );
+        } catch (IOException e) {
+            throw new FileException("Failed to copy quad.", e);
+        }
+    }
+
+    /**
+     * Parses the file as a stream and sends the ids of the quads by batches to the writer while they are read.
+     * An empty batch marks the end of the file.
+     *
+     * @param file  The input file
+     * @param queue The batches to write
+     */
+    private void parseFile(MultipartFile file, BlockingQueue<List<RDFVersionedQuad>> queue) {
+        log.info("Current file: {}", file.getOriginalFilename());
+        int batchSize = rdfVersionedQuadComponent.getBatchSize();
+        List<RDFVersionedQuad> batch = new ArrayList<>(batchSize);
+
+        try (InputStream inputStream = file.getInputStream()) {
+            RDFParser.create()
+                    .source(inputStream)
+                    .lang(RDFLanguages.nameToLang(FilenameUtils.getExtension(file.getOriginalFilename())))
+                    .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
+                    .parse(new QuadImportStreamRDF(quad -> {
+                        batch.add(getRDFVersionedQuad(quad));
+
+                        if (batch.size() >= batchSize) {
+                            putBatch(queue, new ArrayList<>(batch));
+                            batch.clear();
+                        }
+                    }));
+
+            if (!batch.isEmpty()) {
+                putBatch(queue, batch);
+            }
+        } catch (IOException e) {
+            throw new FileException("Failed to store file.", e);
+        } finally {
+            try {
+                queue.put(Collections.emptyList());
+            } catch (InterruptedException e) {
+                // the writer was stopped
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Saves the batches of the file as valid or not valid in the new version until the end of the file
+     *
+     * @param file   The input file
+     * @param queue  The batches sent by the parser
+     * @param action The action (add or remove)
+     * @param length The index of the new version inside the validity bit strings
+     */
+    private void writeFile(MultipartFile file, BlockingQueue<List<RDFVersionedQuad>> queue, String action, Integer length) {
+        log.debug("Write file: {} ({})", file.getOriginalFilename(), action);
+
+        try {
+            for (List<RDFVersionedQuad> batch = queue.take(); !batch.isEmpty(); batch = queue.take()) {
+                log.debug("Save batch of {} quads ({})", batch.size(), action);
+                rdfVersionedQuadComponent.saveAll(batch, !action.equals("remove"), length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileException("The import of the file: " + file.getOriginalFilename() + " was interrupted", e);
+        }
+    }
+
+    /**
+     * Sends the batch to the writer, waiting while the writer is late
+     *
+     * @param queue The batches to write
+     * @param batch The batch
+     */
+    private static void putBatch(BlockingQueue<List<RDFVersionedQuad>> queue, List<RDFVersionedQuad> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileException("The import was interrupted", e);
+        }
+    }
+
+    /**
+     * Waits for the end of all the tasks and rethrows the first failure
+     *
+     * @param futures The tasks
+     */
+    private static void awaitAll(List<Future<?>> futures) {
+        RuntimeException failure = null;
+
+        for (Future<?> future : futures) {
+            try {
+                await(future);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for the end of the task and rethrows its failure
+     *
+     * @param future The task
+     */
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileException("The import was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new FileException("Failed to store file.", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the ids of the saved or existing subject, property, object and named graph of the quad
+     *
+     * @param quad The parsed quad
+     * @return The quad ids (without validity)
+     */
+    private RDFVersionedQuad getRDFVersionedQuad(Quad quad) {
+        RDFSavedQuad rdfSavedQuad = getRDFSavedQuad(quad);
+
+        return new RDFVersionedQuad(
+                rdfSavedQuad.getSavedRDFSubject().getIdResourceOrLiteral(),
+                rdfSavedQuad.getSavedRDFPredicate().getIdResourceOrLiteral(),
+                rdfSavedQuad.getSavedRDFObject().getIdResourceOrLiteral(),
+                rdfSavedQuad.getSavedRDFNamedGraph().getIdNamedGraph(),
+                null
+        );
+    }
+
     /**
      * Saves the subject, the property, the object and the named graph inside the database if they exist else returning them
      *
-     * @param statement  The statement
-     * @param namedModel The named model
+     * @param quad The parsed quad
      * @return The saved or existing Quad
      */
-    private RDFSavedQuad getRDFSavedQuad(Statement statement, String namedModel) {
-        RDFNode subject = statement.getSubject();
-        RDFNode predicate = statement.getPredicate();
-        RDFNode object = statement.getObject();
+    private RDFSavedQuad getRDFSavedQuad(Quad quad) {
+        String namedModel = getNamedGraphName(quad);
 
         RDFNamedGraph savedRDFNamedGraph = saveRDFNamedGraphOrReturnExisting(namedModel);
-        RDFResourceOrLiteral savedRDFSubject = saveRDFResourceOrLiteralOrReturnExisting(subject, "Subject");
-        RDFResourceOrLiteral savedRDFPredicate = saveRDFResourceOrLiteralOrReturnExisting(predicate, "Predicate");
-        RDFResourceOrLiteral savedRDFObject = saveRDFResourceOrLiteralOrReturnExisting(object, "Object");
+        RDFResourceOrLiteral savedRDFSubject = saveRDFResourceOrLiteralOrReturnExisting(quad.getSubject(), "Subject");
+        RDFResourceOrLiteral savedRDFPredicate = saveRDFResourceOrLiteralOrReturnExisting(quad.getPredicate(), "Predicate");
+        RDFResourceOrLiteral savedRDFObject = saveRDFResourceOrLiteralOrReturnExisting(quad.getObject(), "Object");
 
         log.debug("Insert or updated quad (NG: {}, S: {}, P: {}, O: {})",
                 namedModel,
@@ -304,6 +448,16 @@ public class QuadImportService implements IQuadImportService {
         return new RDFSavedQuad(savedRDFNamedGraph, savedRDFSubject, savedRDFPredicate, savedRDFObject);
     }
 
+    /**
+     * Returns the name of the quad graph ("default" for the default graph)
+     *
+     * @param quad The parsed quad
+     * @return The named graph name
+     */
+    private static String getNamedGraphName(Quad quad) {
+        return quad.isDefaultGraph() ? "default" : quad.getGraph().toString();
+    }
+
     /**
      * Saves and return the RDF Named Graph inside the database if it doesn't exist, else returns the existing one.
      *
@@ -311,16 +465,9 @@ public class QuadImportService implements IQuadImportService {
      * @return The saved or existing RDFNamedGraph element
      */
     private RDFNamedGraph saveRDFNamedGraphOrReturnExisting(String uri) {
-        Optional<RDFNamedGraph> optionalRDFNamedGraph = rdfNamedGraphRepository.findByName(uri);
-
-        if (optionalRDFNamedGraph.isPresent()) {
-            log.debug("Found named graph: {}", uri);
-
-            return optionalRDFNamedGraph.get();
-        }
+        log.debug("Insert or find named graph: {}", uri);
 
-        log.debug("Insert named graph: {}", uri);
-        return rdfNamedGraphRepository.save(uri);
+        return rdfDictionaryComponent.saveNamedGraphOrReturnExisting(uri);
     }
 
     /**
@@ -330,37 +477,18 @@ public class QuadImportService implements IQuadImportService {
      * @param type The RDF node type (logging purpose)
      * @return The saved or existing RDFResourceOrLiteral element
      */
-    private RDFResourceOrLiteral saveRDFResourceOrLiteralOrReturnExisting(RDFNode spo, String type) {
+    private RDFResourceOrLiteral saveRDFResourceOrLiteralOrReturnExisting(Node spo, String type) {
         if (spo.isLiteral()) {
-            Literal literal = spo.asLiteral();
-            String literalValue = literal.getString();
-
-            Optional<RDFResourceOrLiteral> optionalRDFResourceOrLiteral =
-                    rdfResourceRepository.findByNameAndType(literalValue, literal.getDatatype().toString());
-
-            if (optionalRDFResourceOrLiteral.isPresent()) {
-                log.debug("Found {} literal: {}", type, literalValue);
-
-                return optionalRDFResourceOrLiteral.get();
-            }
-
-            log.debug("Insert {} resource: {}", type, literalValue);
-            return rdfResourceRepository.save(literalValue, spo.asLiteral().getDatatype().toString());
-        } else {
-
-            // Get element if exists or save new
-            Optional<RDFResourceOrLiteral> optionalRDFResourceOrLiteral =
-                    rdfResourceRepository.findByNameAndType(spo.toString(), null);
-
-            if (optionalRDFResourceOrLiteral.isPresent()) {
-                log.debug("Found {} resource: {}", type, spo);
+            log.debug("Insert or find {} literal: {}", type, spo.getLiteralLexicalForm());
 
-                return optionalRDFResourceOrLiteral.get();
-            }
-
-            log.debug("Insert {} resource: {}", type, spo);
-            return rdfResourceRepository.save(spo.toString(), null);
+            return rdfDictionaryComponent.saveResourceOrLiteralOrReturnExisting(
+                    spo.getLiteralLexicalForm(),
+                    spo.getLiteralDatatype().toString()
+            );
         }
+
+        log.debug("Insert or find {} resource: {}", type, spo);
+        return rdfDictionaryComponent.saveResourceOrLiteralOrReturnExisting(spo.toString(), null);
     }
 
     /**
@@ -379,9 +507,9 @@ public class QuadImportService implements IQuadImportService {
             } else if (o1.getOriginalFilename().contains("add") && o2.getOriginalFilename().contains("add")) {
                 return 0;
             } else if (o1.getOriginalFilename().contains("remove") && o2.getOriginalFilename().contains("add")) {
-                return 1;
+                return -1;
             }
-            return -1;
+            return 1;
         };
     }
 }
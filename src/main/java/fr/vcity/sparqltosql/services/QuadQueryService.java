@@ -1,21 +1,64 @@
 package fr.vcity.sparqltosql.services;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+import fr.vcity.sparqltosql.dto.SPARQLExplanation;
+import fr.vcity.sparqltosql.exceptions.InvalidPageSizeException;
+import fr.vcity.sparqltosql.exceptions.SPARQLTranslationException;
+import fr.vcity.sparqltosql.model.QuadCursor;
+import fr.vcity.sparqltosql.model.QuadPage;
+import fr.vcity.sparqltosql.model.RDFStatistics;
+import fr.vcity.sparqltosql.model.SQLQuery;
 import fr.vcity.sparqltosql.repository.IRDFNamedGraphRepository;
 import fr.vcity.sparqltosql.repository.IRDFResourceOrLiteralRepository;
+import fr.vcity.sparqltosql.repository.IRDFValidityStorage;
 import fr.vcity.sparqltosql.repository.IRDFVersionedQuadRepository;
+import fr.vcity.sparqltosql.repository.RDFQueryExecutionComponent;
+import fr.vcity.sparqltosql.repository.RDFResultCacheComponent;
+import fr.vcity.sparqltosql.repository.RDFSPARQLQueryComponent;
+import fr.vcity.sparqltosql.repository.RDFStatisticsComponent;
 import fr.vcity.sparqltosql.repository.RDFVersionedQuadComponent;
+import fr.vcity.sparqltosql.utils.ConstantLiftingTransform;
+import fr.vcity.sparqltosql.utils.RDFTermDecoder;
 import fr.vcity.sparqltosql.utils.SPARQLtoSQLVisitor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.graph.Node;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QueryParseException;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.sparql.algebra.Algebra;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.OpWalker;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.optimize.TransformTopN;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.resultset.ResultsWriter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -25,80 +68,456 @@ public class QuadQueryService implements IQuadQueryService {
     IRDFVersionedQuadRepository rdfVersionedQuadRepository;
     IRDFNamedGraphRepository rdfNamedGraphRepository;
     RDFVersionedQuadComponent rdfVersionedQuadComponent;
+    RDFSPARQLQueryComponent rdfSPARQLQueryComponent;
+    RDFStatisticsComponent rdfStatisticsComponent;
+    RDFResultCacheComponent rdfResultCacheComponent;
+    RDFQueryExecutionComponent rdfQueryExecutionComponent;
+    IRDFValidityStorage rdfValidityStorage;
+    ObjectMapper objectMapper;
+    int maximumPageSize;
+    // statistics version and query string -> compiled query (skips the parsing, the compilation and the translation)
+    Cache<String, CompiledQuery> queryCache;
+    // statistics version and serialized algebra without its constants -> SQL query with placeholder parameters (skips the translation)
+    Cache<String, SQLQuery> planCache;
 
     public QuadQueryService(
             IRDFResourceOrLiteralRepository rdfResourceRepository,
             IRDFVersionedQuadRepository rdfVersionedQuadRepository,
             IRDFNamedGraphRepository rdfNamedGraphRepository,
-            RDFVersionedQuadComponent rdfVersionedQuadComponent
+            RDFVersionedQuadComponent rdfVersionedQuadComponent,
+            RDFSPARQLQueryComponent rdfSPARQLQueryComponent,
+            RDFStatisticsComponent rdfStatisticsComponent,
+            RDFResultCacheComponent rdfResultCacheComponent,
+            RDFQueryExecutionComponent rdfQueryExecutionComponent,
+            IRDFValidityStorage rdfValidityStorage,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${sparqltosql.query.plan-cache.maximum-size:1000}") long planCacheMaximumSize,
+            @Value("${sparqltosql.query.page.maximum-size:10000}") int maximumPageSize
     ) {
         this.rdfResourceRepository = rdfResourceRepository;
         this.rdfVersionedQuadRepository = rdfVersionedQuadRepository;
         this.rdfNamedGraphRepository = rdfNamedGraphRepository;
         this.rdfVersionedQuadComponent = rdfVersionedQuadComponent;
+        this.rdfSPARQLQueryComponent = rdfSPARQLQueryComponent;
+        this.rdfStatisticsComponent = rdfStatisticsComponent;
+        this.rdfResultCacheComponent = rdfResultCacheComponent;
+        this.rdfQueryExecutionComponent = rdfQueryExecutionComponent;
+        this.rdfValidityStorage = rdfValidityStorage;
+        this.objectMapper = objectMapper;
+        this.maximumPageSize = maximumPageSize;
+        this.queryCache = Caffeine.newBuilder()
+                .maximumSize(planCacheMaximumSize)
+                .recordStats()
+                .build();
+        this.planCache = Caffeine.newBuilder()
+                .maximumSize(planCacheMaximumSize)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, queryCache, "sparql_query");
+        CaffeineCacheMetrics.monitor(meterRegistry, planCache, "sparql_plan");
     }
 
     /**
+     * Writes the quads filtered by requestedValidity as a JSON array, while they are read from the database
+     *
      * @param requestedValidity the request validity
-     * @return the quads list filtered by requestedValidity
+     * @param outputStream      the output of the JSON array
+     * @throws IOException if the output failed
      */
     @Override
-    public List<RDFCompleteVersionedQuad> queryRequestedValidity(String requestedValidity) {
+    public void queryRequestedValidity(String requestedValidity, OutputStream outputStream) throws IOException {
         log.debug("Requested: {}", requestedValidity);
 
-        if (requestedValidity.equals("*")) {
-            return rdfVersionedQuadComponent.findAll();
-        }
-
-        return rdfVersionedQuadComponent
-                .findAllByValidity(requestedValidity);
+        execute("validity json\n" + requestedValidity, outputStream, out -> {
+            if (requestedValidity.equals("*")) {
+                writeQuads(out, rdfVersionedQuadComponent::findAll);
+            } else {
+                writeQuads(out, consumer -> rdfVersionedQuadComponent.findAllByValidity(requestedValidity, consumer));
+            }
+        });
     }
 
     /**
+     * Writes the quads valid in requestedVersion as a JSON array, while they are read from the database
+     *
      * @param requestedVersion the request version number
-     * @return the quads list filtered by requestedVersion where the fact has to be truthy
+     * @param outputStream     the output of the JSON array
+     * @throws IOException if the output failed
      */
     @Override
-    public List<RDFCompleteVersionedQuad> queryRequestedVersion(Integer requestedVersion) {
+    public void queryRequestedVersion(Integer requestedVersion, OutputStream outputStream) throws IOException {
         log.debug("Requested version: {}", requestedVersion);
 
-        return rdfVersionedQuadComponent
-                .findAllByVersion(requestedVersion);
+        execute(
+                "version json\n" + requestedVersion,
+                outputStream,
+                out -> writeQuads(out, consumer -> rdfVersionedQuadComponent.findAllByVersion(requestedVersion, consumer))
+        );
+    }
+
+    /**
+     * Writes the quads filtered by requestedValidity in the RDF format, while they are read from the database
+     * (their validity isn't written)
+     *
+     * @param requestedValidity the request validity
+     * @param lang              the RDF format (N-Quads, RDF Thrift or RDF Protobuf)
+     * @param outputStream      the output of the quads
+     * @throws IOException if the output failed
+     */
+    @Override
+    public void queryRequestedValidity(String requestedValidity, Lang lang, OutputStream outputStream) throws IOException {
+        log.debug("Requested: {} ({})", requestedValidity, lang.getName());
+
+        execute("validity " + lang.getName() + "\n" + requestedValidity, outputStream, out -> {
+            if (requestedValidity.equals("*")) {
+                writeQuads(out, lang, rdfVersionedQuadComponent::findAll);
+            } else {
+                writeQuads(out, lang, consumer -> rdfVersionedQuadComponent.findAllByValidity(requestedValidity, consumer));
+            }
+        });
+    }
+
+    /**
+     * Writes the quads valid in requestedVersion in the RDF format, while they are read from the database
+     *
+     * @param requestedVersion the request version number
+     * @param lang             the RDF format (N-Quads, RDF Thrift or RDF Protobuf)
+     * @param outputStream     the output of the quads
+     * @throws IOException if the output failed
+     */
+    @Override
+    public void queryRequestedVersion(Integer requestedVersion, Lang lang, OutputStream outputStream) throws IOException {
+        log.debug("Requested version: {} ({})", requestedVersion, lang.getName());
+
+        execute(
+                "version " + lang.getName() + "\n" + requestedVersion,
+                outputStream,
+                out -> writeQuads(out, lang, consumer -> rdfVersionedQuadComponent.findAllByVersion(requestedVersion, consumer))
+        );
+    }
+
+    /**
+     * @param requestedValidity the request validity
+     * @param after             the cursor of the previous page
+     * @param limit             the number of quads of the page (at most <code>sparqltosql.query.page.maximum-size</code>)
+     * @return the page of the quads filtered by requestedValidity
+     * @throws InvalidPageSizeException if the limit isn't positive
+     */
+    @Override
+    public QuadPage queryRequestedValidity(String requestedValidity, QuadCursor after, int limit) {
+        log.debug("Requested: {} (page after {})", requestedValidity, after);
+        int pageSize = getPageSize(limit);
+
+        // admitted as the other queries (and cancelled after the timeout)
+        return rdfQueryExecutionComponent.execute(() -> requestedValidity.equals("*")
+                ? rdfVersionedQuadComponent.findPage(after, pageSize)
+                : rdfVersionedQuadComponent.findPageByValidity(requestedValidity, after, pageSize));
+    }
+
+    /**
+     * @param requestedVersion the request version number
+     * @param after            the cursor of the previous page
+     * @param limit            the number of quads of the page (at most <code>sparqltosql.query.page.maximum-size</code>)
+     * @return the page of the quads valid in requestedVersion
+     * @throws InvalidPageSizeException if the limit isn't positive
+     */
+    @Override
+    public QuadPage queryRequestedVersion(Integer requestedVersion, QuadCursor after, int limit) {
+        log.debug("Requested version: {} (page after {})", requestedVersion, after);
+        int pageSize = getPageSize(limit);
+
+        return rdfQueryExecutionComponent.execute(() -> rdfVersionedQuadComponent.findPageByVersion(requestedVersion, after, pageSize));
+    }
+
+    /**
+     * Writes the quads (i.e. of a page)
+     *
+     * @param quads        the quads
+     * @param lang         the RDF format (<code>null</code> for the JSON array of the versioned quads)
+     * @param outputStream the output of the quads
+     * @throws IOException if the output failed
+     */
+    @Override
+    public void writeQuads(List<RDFCompleteVersionedQuad> quads, Lang lang, OutputStream outputStream) throws IOException {
+        if (lang == null) {
+            writeQuads(outputStream, quads::forEach);
+        } else {
+            writeQuads(outputStream, lang, quads::forEach);
+        }
+    }
+
+    /**
+     * Writes the quads changed between the two versions while they are read from the database (a single scan of the quads):
+     * either as an RDF Patch (an <code>A</code> row per added quad and a <code>D</code> row per removed quad,
+     * with the terms of N-Quads), or as the N-Quads of the added or of the removed quads.
+     *
+     * @param fromVersion  the index of the first version
+     * @param toVersion    the index of the second version
+     * @param isAdd        <code>true</code> for the N-Quads of the added quads, <code>false</code> for the removed ones,
+     *                     <code>null</code> for the RDF Patch of both
+     * @param outputStream the output of the changes
+     * @throws IOException if the output failed
+     */
+    @Override
+    public void queryVersionDiff(Integer fromVersion, Integer toVersion, Boolean isAdd, OutputStream outputStream) throws IOException {
+        log.debug("Requested diff: {} -> {} ({})", fromVersion, toVersion, isAdd);
+
+        execute("diff " + isAdd + "\n" + fromVersion + " " + toVersion, outputStream, out -> {
+            if (isAdd == null) {
+                writePatch(out, consumer -> rdfVersionedQuadComponent.findAllChanges(fromVersion, toVersion, null, consumer));
+            } else {
+                writeQuads(out, Lang.NQUADS, consumer -> rdfVersionedQuadComponent.findAllChanges(
+                        fromVersion, toVersion, isAdd, (quad, added) -> consumer.accept(quad)
+                ));
+            }
+        });
+    }
+
+    /**
+     * Translates the SPARQL query into a single SQL query and runs it.
+     * The translations are cached by query string, and by algebra without the constants of its quad patterns and filters:
+     * the queries differing only by these constants run the same parameterized SQL
+     * (prepared once per connection by the driver).
+     * The translations depend on the statistics of the quads: they are computed again after each import.
+     * The results are cached by serialized algebra (the normalized query) until the next import.
+     *
+     * <br />The query is translated before anything is written, so an unsupported query fails the request;
+     * the solutions are written in the SPARQL results format while they are read from the database.
+     *
+     * @param queryString The given query string
+     * @param lang        The SPARQL results format (JSON, TSV, CSV, Thrift or Protobuf)
+     * @return The writer of the solutions
+     * @throws SPARQLTranslationException if the query can't be translated
+     */
+    @Override
+    public RDFResultCacheComponent.ResultWriter querySPARQL(String queryString, Lang lang) {
+        RDFStatistics statistics = rdfStatisticsComponent.getStatistics();
+        CompiledQuery compiledQuery = queryCache.get(
+                statistics.getVersion() + "\n" + queryString,
+                key -> compile(queryString, statistics)
+        );
+
+        return outputStream -> execute(
+                "sparql " + lang.getName() + "\n" + compiledQuery.algebra(),
+                outputStream,
+                out -> rdfSPARQLQueryComponent.query(
+                        compiledQuery.sqlQuery().bind(compiledQuery.constants()),
+                        rowSet -> writeSolutions(out, lang, rowSet)
+                )
+        );
+    }
+
+    /**
+     * Writes the cached result of the query, or runs the query (once admitted, with its timeout) and caches its result
+     *
+     * @param query        The normalized query (with its result format)
+     * @param outputStream The output of the result
+     * @param writer       The writer of the result, running the query
+     * @throws IOException if the output failed
+     */
+    private void execute(String query, OutputStream outputStream, RDFResultCacheComponent.ResultWriter writer) throws IOException {
+        rdfResultCacheComponent.write(query, outputStream, out -> rdfQueryExecutionComponent.execute(out, writer));
     }
 
     /**
-     * Parse the query String into an algebra
+     * Translates the SPARQL query without the caches and runs it with <code>EXPLAIN (ANALYZE, BUFFERS)</code>,
+     * timing each phase: the parsing, the compilation into the algebra, the translation into SQL,
+     * the resolution of the constants and the execution.
      *
      * @param queryString The given query string
+     * @return The algebra, the SQL query and the values of its <code>?</code> placeholders, its plan and the duration of each phase
      */
     @Override
-    public List<RDFCompleteVersionedQuad> querySPARQL(String queryString) {
-        getOperatorsFromQuery(queryString);
-        return null;
+    public SPARQLExplanation explainSPARQL(String queryString) {
+        SPARQLExplanation explanation = new SPARQLExplanation();
+
+        long start = System.nanoTime();
+        Query query;
+        try {
+            query = QueryFactory.create(queryString);
+        } catch (QueryParseException e) {
+            throw new SPARQLTranslationException(e.getMessage());
+        }
+        if (!query.isSelectType()) {
+            throw new SPARQLTranslationException("Query with type: " + query.queryType() + " not implemented");
+        }
+        long parsed = System.nanoTime();
+        Op op = Algebra.toQuadForm(Transformer.transform(new TransformTopN(), Algebra.compile(query)));
+        long compiled = System.nanoTime();
+        ConstantLiftingTransform constantLiftingTransform = new ConstantLiftingTransform();
+        SQLQuery sqlQuery = translate(Transformer.transform(constantLiftingTransform, op), rdfStatisticsComponent.getStatistics())
+                .bind(constantLiftingTransform.getConstants());
+        long translated = System.nanoTime();
+
+        explanation.setAlgebra(op.toString());
+        explanation.getTimings().put("parse", (parsed - start) / 1e6);
+        explanation.getTimings().put("algebra", (compiled - parsed) / 1e6);
+        explanation.getTimings().put("translate", (translated - compiled) / 1e6);
+        // admitted as the other queries (and cancelled after the timeout) before its transaction starts
+        rdfQueryExecutionComponent.execute(() -> {
+            rdfSPARQLQueryComponent.explain(sqlQuery, explanation);
+            return explanation;
+        });
+
+        return explanation;
+    }
+
+    /**
+     * @param limit The requested number of quads of a page
+     * @return The number of quads of the page, at most <code>sparqltosql.query.page.maximum-size</code>
+     * @throws InvalidPageSizeException if the limit isn't positive
+     */
+    private int getPageSize(int limit) {
+        if (limit <= 0) {
+            throw new InvalidPageSizeException("Invalid limit: " + limit);
+        }
+
+        return Math.min(limit, maximumPageSize);
     }
 
     /**
-     * Returns the algebra of the given query string
+     * Returns the SQL translation of the algebra of the given query string
      *
      * @param queryString The query string
+     * @param statistics  The statistics ordering the joins
+     * @return The translated query and its constants
      */
-    private void getOperatorsFromQuery(String queryString) {
+    private CompiledQuery compile(String queryString, RDFStatistics statistics) {
         try {
             Query query = QueryFactory.create(queryString);
             switch (query.queryType()) {
                 case SELECT -> {
-                    Op op = Algebra.compile(query);
-                    SPARQLtoSQLVisitor sparqLtoSQLVisitor = new SPARQLtoSQLVisitor();
-                    OpWalker.walk(op, sparqLtoSQLVisitor);
+                    // LIMIT over ORDER BY becomes a single top N operator
+                    Op op = Algebra.toQuadForm(Transformer.transform(new TransformTopN(), Algebra.compile(query)));
+                    log.debug("Algebra: {}", op);
+                    ConstantLiftingTransform constantLiftingTransform = new ConstantLiftingTransform();
+                    Op liftedOp = Transformer.transform(constantLiftingTransform, op);
+
+                    return new CompiledQuery(
+                            // keyed by the serialized algebra: Op.equals ignores the expressions of a left join
+                            planCache.get(statistics.getVersion() + "\n" + liftedOp, key -> translate(liftedOp, statistics)),
+                            constantLiftingTransform.getConstants(),
+                            op.toString()
+                    );
                 }
-                case UNKNOWN, ASK, CONSTRUCT, DESCRIBE, CONSTRUCT_JSON ->
-                        log.warn("Query with type: {} not implemented", query.queryType().toString());
+                default -> throw new SPARQLTranslationException("Query with type: " + query.queryType() + " not implemented");
             }
         } catch (QueryParseException e) {
-            log.error(e.getMessage());
             log.warn("Query: {}", queryString);
             log.warn("Info: INSERT, UPDATE queries are not supported by the Query class");
-            // TODO: implement ?
+            throw new SPARQLTranslationException(e.getMessage());
         }
     }
+
+    /**
+     * @param op         The algebra (in quad form)
+     * @param statistics The statistics ordering the joins
+     * @return The SQL translation of the algebra
+     */
+    private SQLQuery translate(Op op, RDFStatistics statistics) {
+        SPARQLtoSQLVisitor sparqLtoSQLVisitor = new SPARQLtoSQLVisitor(rdfValidityStorage, statistics);
+        OpWalker.walk(op, sparqLtoSQLVisitor);
+
+        return sparqLtoSQLVisitor.getSQLQuery();
+    }
+
+    /**
+     * @param outputStream The output of the solutions
+     * @param lang         The SPARQL results format
+     * @param rowSet       The solutions
+     */
+    private static void writeSolutions(OutputStream outputStream, Lang lang, RowSet rowSet) {
+        ResultsWriter.create()
+                .lang(lang)
+                .write(outputStream, rowSet);
+    }
+
+    /**
+     * Writes the quads one by one in the RDF format
+     *
+     * @param outputStream The output of the quads
+     * @param lang         The RDF format
+     * @param query        The query of the quads, calling its consumer for each quad
+     */
+    private static void writeQuads(OutputStream outputStream, Lang lang, Consumer<Consumer<RDFCompleteVersionedQuad>> query) {
+        StreamRDF streamRDF = StreamRDFWriter.getWriterStream(outputStream, lang);
+
+        streamRDF.start();
+        query.accept(quad -> streamRDF.quad(RDFTermDecoder.decodeQuad(quad)));
+        streamRDF.finish();
+    }
+
+    /**
+     * Writes the changed quads one by one as the rows of an RDF Patch
+     *
+     * @param outputStream The output of the patch
+     * @param query        The query of the changes, calling its consumer for each quad and its change (<code>true</code> if added)
+     * @throws IOException if the output failed
+     */
+    private static void writePatch(OutputStream outputStream, Consumer<BiConsumer<RDFCompleteVersionedQuad, Boolean>> query) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        try {
+            query.accept((versionedQuad, isAdd) -> {
+                Quad quad = RDFTermDecoder.decodeQuad(versionedQuad);
+
+                try {
+                    writer.write(isAdd ? "A " : "D ");
+                    writer.write(NodeFmtLib.strNT(quad.getSubject()));
+                    writer.write(' ');
+                    writer.write(NodeFmtLib.strNT(quad.getPredicate()));
+                    writer.write(' ');
+                    writer.write(NodeFmtLib.strNT(quad.getObject()));
+                    if (!quad.isDefaultGraph()) {
+                        writer.write(' ');
+                        writer.write(NodeFmtLib.strNT(quad.getGraph()));
+                    }
+                    writer.write(" .\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes the quads one by one inside a JSON array.
+     * The quads are buffered by the generator, which flushes its buffer once full (not after each quad).
+     *
+     * @param outputStream The output of the JSON array
+     * @param query        The query of the quads, calling its consumer for each quad
+     * @throws IOException if the output failed
+     */
+    private void writeQuads(OutputStream outputStream, Consumer<Consumer<RDFCompleteVersionedQuad>> query) throws IOException {
+        ObjectWriter quadWriter = objectMapper.writerFor(RDFCompleteVersionedQuad.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator generator = quadWriter.createGenerator(outputStream)) {
+            generator.writeStartArray();
+            query.accept(quad -> {
+                try {
+                    quadWriter.writeValue(generator, quad);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param sqlQuery  The SQL translation, with placeholder parameters
+     * @param constants The constants by placeholder
+     * @param algebra   The serialized algebra of the query (without its prefixes, comments and formatting)
+     */
+    private record CompiledQuery(SQLQuery sqlQuery, Map<Node, Node> constants, String algebra) {
+    }
 }
@@ -0,0 +1,144 @@
+package fr.vcity.sparqltosql.utils;
+
+import org.apache.jena.datatypes.BaseDatatype;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpLeftJoin;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.expr.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces the subject and object constants of the quad patterns, and the constants of the filters, by numbered
+ * placeholders, so that the queries differing only by these constants have the same algebra (and share the same SQL translation).
+ * The constants are kept by placeholder to be bound when the SQL query runs.
+ * <br />The properties and the named graphs are kept: the join order of the translation depends on their statistics.
+ * A filter constant is replaced by a literal whose datatype is the kind of its value (number, date or string),
+ * which decides its translation; the booleans and the regex flags are kept.
+ */
+public class ConstantLiftingTransform extends TransformCopy {
+
+    private static final String PLACEHOLDER_PREFIX = "urn:sparqltosql:param:";
+    public static final String NUMBER_TYPE = PLACEHOLDER_PREFIX + "number";
+    public static final String DATE_TIME_TYPE = PLACEHOLDER_PREFIX + "dateTime";
+    public static final String STRING_TYPE = PLACEHOLDER_PREFIX + "string";
+
+    private final Map<Node, Node> constants = new LinkedHashMap<>();
+    private final ExprTransform exprTransform = new ExprTransformCopy() {
+        @Override
+        public Expr transform(NodeValue nodeValue) {
+            return liftValue(nodeValue);
+        }
+
+        @Override
+        public Expr transform(ExprFunctionN func, ExprList args) {
+            if (func instanceof E_Regex && args.size() > 2) {
+                return new E_Regex(args.get(0), args.get(1), func.getArg(3));
+            }
+
+            return super.transform(func, args);
+        }
+    };
+
+    /**
+     * @return The lifted constants by placeholder
+     */
+    public Map<Node, Node> getConstants() {
+        return constants;
+    }
+
+    @Override
+    public Op transform(OpBGP opBGP) {
+        BasicPattern pattern = new BasicPattern();
+        opBGP.getPattern().forEach(triple -> pattern.add(liftTriple(triple)));
+
+        return new OpBGP(pattern);
+    }
+
+    @Override
+    public Op transform(OpQuadPattern quadPattern) {
+        BasicPattern pattern = new BasicPattern();
+        quadPattern.getBasicPattern().forEach(triple -> pattern.add(liftTriple(triple)));
+
+        return new OpQuadPattern(quadPattern.getGraphNode(), pattern);
+    }
+
+    @Override
+    public Op transform(OpFilter opFilter, Op subOp) {
+        return OpFilter.filterDirect(ExprTransformer.transform(exprTransform, opFilter.getExprs()), subOp);
+    }
+
+    @Override
+    public Op transform(OpLeftJoin opLeftJoin, Op left, Op right) {
+        return OpLeftJoin.create(
+                left,
+                right,
+                opLeftJoin.getExprs() == null ? null : ExprTransformer.transform(exprTransform, opLeftJoin.getExprs())
+        );
+    }
+
+    private Triple liftTriple(Triple triple) {
+        return Triple.create(lift(triple.getSubject()), triple.getPredicate(), lift(triple.getObject()));
+    }
+
+    private Node lift(Node node) {
+        if (!node.isConcrete() || node.isBlank()) {
+            return node;
+        }
+
+        Node placeholder = NodeFactory.createURI(PLACEHOLDER_PREFIX + constants.size());
+        constants.put(placeholder, node);
+
+        return placeholder;
+    }
+
+    private Expr liftValue(NodeValue nodeValue) {
+        Node node = nodeValue.asNode();
+
+        if (node.isURI()) {
+            return NodeValue.makeNode(lift(node));
+        }
+        if (nodeValue.isNumber()) {
+            try {
+                nodeValue.getDecimal();
+            } catch (ExprEvalException | NumberFormatException e) {
+                // rejected by the translation
+                return nodeValue;
+            }
+            return NodeValue.makeNode(liftLiteral(node, NUMBER_TYPE));
+        }
+        if (nodeValue.isDateTime() || nodeValue.isDate()) {
+            return NodeValue.makeNode(liftLiteral(node, DATE_TIME_TYPE));
+        }
+        if (nodeValue.isString() || nodeValue.isLangString()) {
+            return NodeValue.makeNode(liftLiteral(node, STRING_TYPE));
+        }
+        if (node.isLiteral() && node.getLiteralDatatype().getClass() == BaseDatatype.class) {
+            // a literal of a custom datatype (e.g. a measure), compared by id
+            return NodeValue.makeNode(liftLiteral(node, node.getLiteralDatatypeURI()));
+        }
+
+        return nodeValue;
+    }
+
+    /**
+     * @param node The literal
+     * @param type The datatype of the placeholder
+     * @return The placeholder of the literal
+     */
+    private Node liftLiteral(Node node, String type) {
+        Node placeholder = NodeFactory.createLiteral(PLACEHOLDER_PREFIX + constants.size(), TypeMapper.getInstance().getSafeTypeByName(type));
+        constants.put(placeholder, node);
+
+        return placeholder;
+    }
+}
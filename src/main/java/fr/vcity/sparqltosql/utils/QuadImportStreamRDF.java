@@ -0,0 +1,37 @@
+package fr.vcity.sparqltosql.utils;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.function.Consumer;
+
+/**
+ * Forwards every parsed statement to the persistence layer as soon as the parser emits it,
+ * so that no in-memory <code>Dataset</code> is built during an import.
+ * Triples (default graph statements) are forwarded as quads inside the default graph.
+ */
+public class QuadImportStreamRDF extends StreamRDFBase {
+
+    private final Consumer<Quad> quadConsumer;
+
+    public QuadImportStreamRDF(Consumer<Quad> quadConsumer) {
+        this.quadConsumer = quadConsumer;
+    }
+
+    /**
+     * @param triple The parsed triple of the default graph
+     */
+    @Override
+    public void triple(Triple triple) {
+        quadConsumer.accept(Quad.create(Quad.defaultGraphNodeGenerated, triple));
+    }
+
+    /**
+     * @param quad The parsed quad
+     */
+    @Override
+    public void quad(Quad quad) {
+        quadConsumer.accept(quad);
+    }
+}
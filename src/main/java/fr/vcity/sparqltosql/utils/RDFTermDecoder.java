@@ -0,0 +1,68 @@
+package fr.vcity.sparqltosql.utils;
+
+import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the RDF terms from the names and the types stored inside the dictionary
+ */
+public class RDFTermDecoder {
+
+    private static final Pattern DATATYPE_PATTERN = Pattern.compile("Datatype\\[([^ \\]]+).*]");
+    private static final String DEFAULT_GRAPH_NAME = "default";
+
+    private RDFTermDecoder() {
+    }
+
+    /**
+     * @param name The resource URI or the literal value
+     * @param type The stored literal type (<code>null</code> for a resource)
+     * @return The RDF term
+     */
+    public static Node decodeTerm(String name, String type) {
+        return type == null ? NodeFactory.createURI(name) : NodeFactory.createLiteral(name, getDatatype(type));
+    }
+
+    /**
+     * @param name The named graph URI ("default" for the default graph)
+     * @return The graph node
+     */
+    public static Node decodeNamedGraph(String name) {
+        return name.equals(DEFAULT_GRAPH_NAME) ? Quad.defaultGraphIRI : NodeFactory.createURI(name);
+    }
+
+    /**
+     * @param quad The decoded quad (its validity is ignored)
+     * @return The RDF quad
+     */
+    public static Quad decodeQuad(RDFCompleteVersionedQuad quad) {
+        return Quad.create(
+                decodeNamedGraph(quad.getNamedGraph()),
+                decodeTerm(quad.getS(), null),
+                decodeTerm(quad.getP(), null),
+                decodeTerm(quad.getO(), quad.getObjectType())
+        );
+    }
+
+    /**
+     * @param type The stored literal type (e.g. <code>Datatype[http://www.w3.org/2001/XMLSchema#string -> class java.lang.String]</code>)
+     * @return The datatype (the language of the strings isn't stored)
+     */
+    private static RDFDatatype getDatatype(String type) {
+        Matcher matcher = DATATYPE_PATTERN.matcher(type);
+        String uri = matcher.matches() ? matcher.group(1) : type;
+
+        return uri.equals(RDF.langString.getURI())
+                ? XSDDatatype.XSDstring
+                : TypeMapper.getInstance().getSafeTypeByName(uri);
+    }
+}
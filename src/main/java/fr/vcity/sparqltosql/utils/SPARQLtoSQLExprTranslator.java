@@ -0,0 +1,668 @@
+package fr.vcity.sparqltosql.utils;
+
+import fr.vcity.sparqltosql.exceptions.SPARQLTranslationException;
+import fr.vcity.sparqltosql.model.SQLParameter;
+import fr.vcity.sparqltosql.model.SQLVarType;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.datatypes.xsd.impl.RDFLangString;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.expr.*;
+import org.apache.jena.sparql.expr.aggregate.*;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static fr.vcity.sparqltosql.model.SQLQuery.column;
+
+/**
+ * Translates the SPARQL expressions into SQL expressions evaluated by PostgreSQL.
+ * The variables used by an expression are decoded by joining their dictionary entry, only when the expression
+ * needs their name or their type (the ids are compared directly).
+ * <br />The comparisons depend on the type of their operands: numeric (the numeric XSD literals, and the literals
+ * of a custom datatype with a numeric lexical form, i.e. measures), date and time, string, or term (IRIs are compared
+ * by id). A SPARQL error (e.g. comparing a string with a number) evaluates to <code>NULL</code>, so the solution is
+ * discarded as in SPARQL. The dates are read by <code>try_cast_timestamptz</code> (<code>schema.sql</code>):
+ * a date PostgreSQL can't read (e.g. a negative year) is an error too.
+ * <br />The constants (except the booleans) are bound as parameters, selected once by a single row subquery joined
+ * before the dictionary entries: a constant can be used several times by the translation.
+ */
+public class SPARQLtoSQLExprTranslator {
+
+    private static final String NUMERIC_PATTERN = "^[+-]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)([eE][+-]?[0-9]+)?$";
+    private static final String DATE_TIME_PATTERN = "^-?[0-9]{4,}-[0-9]{2}-[0-9]{2}(T[0-9]{2}:[0-9]{2}:[0-9]{2}(\\.[0-9]+)?)?(Z|[+-][0-9]{2}:[0-9]{2})?$";
+    private static final String XSD_TYPE_PREFIX = "Datatype[" + XSDDatatype.XSD + "#";
+
+    private static final List<String> NUMERIC_TYPES = Stream.of(
+            XSDDatatype.XSDinteger, XSDDatatype.XSDdecimal, XSDDatatype.XSDdouble, XSDDatatype.XSDfloat,
+            XSDDatatype.XSDlong, XSDDatatype.XSDint, XSDDatatype.XSDshort, XSDDatatype.XSDbyte,
+            XSDDatatype.XSDnonNegativeInteger, XSDDatatype.XSDnonPositiveInteger,
+            XSDDatatype.XSDpositiveInteger, XSDDatatype.XSDnegativeInteger,
+            XSDDatatype.XSDunsignedLong, XSDDatatype.XSDunsignedInt,
+            XSDDatatype.XSDunsignedShort, XSDDatatype.XSDunsignedByte
+    ).map(Object::toString).toList();
+    private static final List<String> DATE_TIME_TYPES = Stream.of(
+            XSDDatatype.XSDdateTime, XSDDatatype.XSDdateTimeStamp, XSDDatatype.XSDdate
+    ).map(Object::toString).toList();
+    private static final List<String> STRING_TYPES = Stream.of(
+            XSDDatatype.XSDstring, RDFLangString.rdfLangString
+    ).map(Object::toString).toList();
+
+    private final Map<String, String> columns;
+    private final Map<String, SQLVarType> vars;
+    private final Supplier<String> aliasSupplier;
+    private final Map<String, String> termAliases = new LinkedHashMap<>();
+    private final Map<SQLParameter, String> params = new LinkedHashMap<>();
+    private final List<String> translations = new ArrayList<>();
+    private String paramAlias;
+
+    /**
+     * @param alias         The alias of the filtered query
+     * @param vars          The variables of the filtered query
+     * @param aliasSupplier The supplier of unique aliases
+     */
+    public SPARQLtoSQLExprTranslator(String alias, Map<String, SQLVarType> vars, Supplier<String> aliasSupplier) {
+        this(columns(alias, vars), vars, aliasSupplier);
+    }
+
+    /**
+     * @param columns       The SQL expression of each variable (i.e. the variables of both sides of a join)
+     * @param vars          The variables of the filtered solutions
+     * @param aliasSupplier The supplier of unique aliases
+     */
+    public SPARQLtoSQLExprTranslator(Map<String, String> columns, Map<String, SQLVarType> vars, Supplier<String> aliasSupplier) {
+        this.columns = columns;
+        this.vars = vars;
+        this.aliasSupplier = aliasSupplier;
+    }
+
+    private static Map<String, String> columns(String alias, Map<String, SQLVarType> vars) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        vars.keySet().forEach(var -> columns.put(var, alias + "." + column(var)));
+
+        return columns;
+    }
+
+    /**
+     * @return The constants of the translated expressions, bound to the <code>?</code> placeholders of the joins
+     */
+    public List<SQLParameter> getParams() {
+        return new ArrayList<>(params.keySet());
+    }
+
+    /**
+     * @return The join of the constants, then the joins of the dictionary entries of the variables used by the translated expressions
+     */
+    public String getJoins() {
+        String constants = params.isEmpty() ? "" : " CROSS JOIN (SELECT " + params.entrySet()
+                .stream()
+                .map(param -> "CAST(? AS " + switch (param.getKey().type()) {
+                    case TERM, NAMED_GRAPH -> "integer";
+                    case NUMBER -> "numeric";
+                    default -> "text";
+                } + ") AS " + param.getValue())
+                .collect(Collectors.joining(", ")) + ") " + paramAlias;
+
+        return constants + termAliases.entrySet()
+                .stream()
+                .filter(termAlias -> isUsed(termAlias.getValue()))
+                .map(termAlias -> vars.get(termAlias.getKey()) == SQLVarType.NAMED_GRAPH
+                        ? " LEFT JOIN named_graph " + termAlias.getValue() +
+                        " ON " + termAlias.getValue() + ".id_named_graph = " + columns.get(termAlias.getKey())
+                        : " LEFT JOIN resource_or_literal " + termAlias.getValue() +
+                        " ON " + termAlias.getValue() + ".id_resource_or_literal = " + columns.get(termAlias.getKey()))
+                .collect(Collectors.joining());
+    }
+
+    /**
+     * @param expr The SPARQL expression
+     * @return The SQL condition
+     */
+    public String translateCondition(Expr expr) {
+        SQLExpr sqlExpr = translate(expr);
+
+        if (sqlExpr.kind() != Kind.BOOLEAN) {
+            throw unsupported(expr);
+        }
+
+        return used(sqlExpr.sql());
+    }
+
+    /**
+     * @param expr The SPARQL expression
+     * @return The SQL value of the expression (the id of a term, or a computed value)
+     */
+    public SQLValue translateValue(Expr expr) {
+        SQLValue value = translateToValue(expr);
+        used(value.sql());
+
+        return value;
+    }
+
+    private SQLValue translateToValue(Expr expr) {
+        if (expr instanceof ExprVar exprVar) {
+            String var = exprVar.getVarName();
+
+            return vars.containsKey(var)
+                    ? new SQLValue(vars.get(var), columns.get(var))
+                    : new SQLValue(SQLVarType.TERM, "NULL::integer");
+        }
+
+        SQLExpr sqlExpr = translate(expr);
+
+        return switch (sqlExpr.kind()) {
+            case TERM -> new SQLValue(SQLVarType.TERM, sqlExpr.sql());
+            case NUMERIC -> new SQLValue(SQLVarType.NUMBER, sqlExpr.sql());
+            default -> new SQLValue(SQLVarType.STRING, text(sqlExpr));
+        };
+    }
+
+    /**
+     * Translates a sort condition following the SPARQL ordering: unbound first, then the IRIs, then the literals
+     * (by numeric value, then by date, then by lexical form in code point order).
+     *
+     * @param expr      The SPARQL expression
+     * @param ascending <code>false</code> for a descending order
+     * @return The SQL sort keys
+     */
+    public List<String> translateOrderKeys(Expr expr, boolean ascending) {
+        SQLExpr sqlExpr = translate(expr);
+        String direction = ascending ? " ASC" : " DESC";
+        List<String> keys = switch (sqlExpr.kind()) {
+            case TERM -> List.of(
+                    "(CASE WHEN " + sqlExpr.sql() + " IS NULL THEN 0 WHEN " + sqlExpr.type() + " IS NULL THEN 1 ELSE 2 END)",
+                    numeric(sqlExpr),
+                    dateTime(sqlExpr),
+                    sqlExpr.name() + " COLLATE \"C\"",
+                    sqlExpr.type()
+            );
+            case STRING -> List.of("(" + sqlExpr.sql() + " IS NOT NULL)", sqlExpr.sql() + " COLLATE \"C\"");
+            default -> List.of("(" + sqlExpr.sql() + " IS NOT NULL)", sqlExpr.sql());
+        };
+
+        keys.forEach(this::used);
+
+        return keys.stream().map(key -> key + direction).toList();
+    }
+
+    /**
+     * Translates an aggregate of the solutions of a group.
+     * MIN, MAX and SAMPLE return one of the aggregated terms, the other aggregates a computed value.
+     *
+     * @param aggregator The SPARQL aggregate
+     * @return The SQL aggregate
+     */
+    public SQLValue translateAggregator(Aggregator aggregator) {
+        SQLValue value = aggregate(aggregator);
+        used(value.sql());
+
+        return value;
+    }
+
+    private SQLValue aggregate(Aggregator aggregator) {
+        if (aggregator instanceof AggCount) {
+            return new SQLValue(SQLVarType.NUMBER, "count(*)");
+        }
+        if (aggregator instanceof AggCountDistinct) {
+            return new SQLValue(SQLVarType.NUMBER, columns.isEmpty()
+                    ? "least(count(*), 1)"
+                    : "count(DISTINCT ROW(" + String.join(", ", columns.values()) + "))");
+        }
+        if (aggregator.getExprList() == null || aggregator.getExprList().size() != 1) {
+            throw new SPARQLTranslationException("The aggregate " + aggregator + " isn't supported");
+        }
+
+        Expr expr = aggregator.getExprList().get(0);
+
+        if (aggregator instanceof AggCountVar) {
+            return new SQLValue(SQLVarType.NUMBER, "count(" + translateValue(expr).sql() + ")");
+        }
+        if (aggregator instanceof AggCountVarDistinct) {
+            return new SQLValue(SQLVarType.NUMBER, "count(DISTINCT " + translateValue(expr).sql() + ")");
+        }
+        if (aggregator instanceof AggSum) {
+            return new SQLValue(SQLVarType.NUMBER, "coalesce(sum(" + numeric(translate(expr)) + "), 0)");
+        }
+        if (aggregator instanceof AggSumDistinct) {
+            return new SQLValue(SQLVarType.NUMBER, "coalesce(sum(DISTINCT " + numeric(translate(expr)) + "), 0)");
+        }
+        if (aggregator instanceof AggAvg) {
+            return new SQLValue(SQLVarType.NUMBER, "coalesce(avg(" + numeric(translate(expr)) + "), 0)");
+        }
+        if (aggregator instanceof AggAvgDistinct) {
+            return new SQLValue(SQLVarType.NUMBER, "coalesce(avg(DISTINCT " + numeric(translate(expr)) + "), 0)");
+        }
+        if (aggregator instanceof AggMin || aggregator instanceof AggMinDistinct) {
+            return translateMinMax(expr, "min", "ASC");
+        }
+        if (aggregator instanceof AggMax || aggregator instanceof AggMaxDistinct) {
+            return translateMinMax(expr, "max", "DESC");
+        }
+        if (aggregator instanceof AggSample || aggregator instanceof AggSampleDistinct) {
+            SQLValue value = translateValue(expr);
+            return new SQLValue(value.type(), "min(" + value.sql() + ")");
+        }
+        if (aggregator instanceof AggGroupConcat groupConcat) {
+            return translateGroupConcat(expr, "", groupConcat.getSeparator());
+        }
+        if (aggregator instanceof AggGroupConcatDistinct groupConcat) {
+            return translateGroupConcat(expr, "DISTINCT ", groupConcat.getSeparator());
+        }
+
+        throw new SPARQLTranslationException("The aggregate " + aggregator + " isn't supported");
+    }
+
+    private SQLExpr translate(Expr expr) {
+        if (expr instanceof ExprVar exprVar) {
+            return translateVar(exprVar.getVarName());
+        }
+        if (expr instanceof NodeValue nodeValue) {
+            return translateConstant(nodeValue);
+        }
+        if (expr instanceof E_LogicalAnd and) {
+            return bool("(" + translateCondition(and.getArg1()) + " AND " + translateCondition(and.getArg2()) + ")");
+        }
+        if (expr instanceof E_LogicalOr or) {
+            return bool("(" + translateCondition(or.getArg1()) + " OR " + translateCondition(or.getArg2()) + ")");
+        }
+        if (expr instanceof E_LogicalNot not) {
+            return bool("(NOT " + translateCondition(not.getArg()) + ")");
+        }
+        if (expr instanceof E_Bound bound && bound.getArg() instanceof ExprVar exprVar) {
+            return bool(vars.containsKey(exprVar.getVarName())
+                    ? "(" + columns.get(exprVar.getVarName()) + " IS NOT NULL)"
+                    : "FALSE");
+        }
+        if (expr instanceof E_Equals equals) {
+            return compare(equals, "=");
+        }
+        if (expr instanceof E_NotEquals notEquals) {
+            return compare(notEquals, "<>");
+        }
+        if (expr instanceof E_LessThan lessThan) {
+            return compare(lessThan, "<");
+        }
+        if (expr instanceof E_LessThanOrEqual lessThanOrEqual) {
+            return compare(lessThanOrEqual, "<=");
+        }
+        if (expr instanceof E_GreaterThan greaterThan) {
+            return compare(greaterThan, ">");
+        }
+        if (expr instanceof E_GreaterThanOrEqual greaterThanOrEqual) {
+            return compare(greaterThanOrEqual, ">=");
+        }
+        if (expr instanceof E_SameTerm sameTerm) {
+            return bool("(" + id(translate(sameTerm.getArg1()), sameTerm) + " = " + id(translate(sameTerm.getArg2()), sameTerm) + ")");
+        }
+        if (expr instanceof E_OneOf oneOf) {
+            return bool("(" + oneOf.getRHS().getList().stream()
+                    .map(value -> compare(new E_Equals(oneOf.getLHS(), value), "=").sql())
+                    .collect(Collectors.joining(" OR ")) + ")");
+        }
+        if (expr instanceof E_NotOneOf notOneOf) {
+            return bool("(" + notOneOf.getRHS().getList().stream()
+                    .map(value -> compare(new E_NotEquals(notOneOf.getLHS(), value), "<>").sql())
+                    .collect(Collectors.joining(" AND ")) + ")");
+        }
+        if (expr instanceof E_Add add) {
+            return arithmetic(add, "+");
+        }
+        if (expr instanceof E_Subtract subtract) {
+            return arithmetic(subtract, "-");
+        }
+        if (expr instanceof E_Multiply multiply) {
+            return arithmetic(multiply, "*");
+        }
+        if (expr instanceof E_Divide divide) {
+            return value(Kind.NUMERIC, "(" + numeric(translate(divide.getArg1())) + " / NULLIF(" + numeric(translate(divide.getArg2())) + ", 0))");
+        }
+        if (expr instanceof E_UnaryMinus unaryMinus) {
+            return value(Kind.NUMERIC, "(- " + numeric(translate(unaryMinus.getArg())) + ")");
+        }
+        if (expr instanceof E_Str str) {
+            return value(Kind.STRING, lexicalForm(translate(str.getArg()), str));
+        }
+        if (expr instanceof E_StrLength strLength) {
+            return value(Kind.NUMERIC, "length(" + string(translate(strLength.getArg())) + ")");
+        }
+        if (expr instanceof E_StrLowerCase lowerCase) {
+            return value(Kind.STRING, "lower(" + string(translate(lowerCase.getArg())) + ")");
+        }
+        if (expr instanceof E_StrUpperCase upperCase) {
+            return value(Kind.STRING, "upper(" + string(translate(upperCase.getArg())) + ")");
+        }
+        if (expr instanceof E_StrContains contains) {
+            return bool("(strpos(" + string(translate(contains.getArg1())) + ", " + string(translate(contains.getArg2())) + ") > 0)");
+        }
+        if (expr instanceof E_StrStartsWith startsWith) {
+            return bool("starts_with(" + string(translate(startsWith.getArg1())) + ", " + string(translate(startsWith.getArg2())) + ")");
+        }
+        if (expr instanceof E_StrEndsWith endsWith) {
+            String suffix = string(translate(endsWith.getArg2()));
+            return bool("(right(" + string(translate(endsWith.getArg1())) + ", length(" + suffix + ")) = " + suffix + ")");
+        }
+        if (expr instanceof E_Regex regex) {
+            return translateRegex(regex);
+        }
+        if (expr instanceof E_IsIRI isIRI) {
+            return bool("(" + type(translate(isIRI.getArg())) + " IS NULL AND " + id(translate(isIRI.getArg()), isIRI) + " IS NOT NULL)");
+        }
+        if (expr instanceof E_IsLiteral isLiteral) {
+            return bool("(" + type(translate(isLiteral.getArg())) + " IS NOT NULL)");
+        }
+
+        throw unsupported(expr);
+    }
+
+    /**
+     * @param var The variable name
+     * @return The id of the term bound to the variable, and its dictionary entry
+     */
+    private SQLExpr translateVar(String var) {
+        if (!vars.containsKey(var)) {
+            // never bound: any use is an error
+            return term("NULL::integer", "NULL::text", "NULL::varchar");
+        }
+        if (vars.get(var) == SQLVarType.NUMBER) {
+            return value(Kind.NUMERIC, columns.get(var));
+        }
+        if (vars.get(var) == SQLVarType.STRING) {
+            return value(Kind.STRING, columns.get(var));
+        }
+        if (vars.get(var) == SQLVarType.VALIDITY) {
+            return value(Kind.STRING, "CAST(" + columns.get(var) + " AS text)");
+        }
+
+        String termAlias = termAliases.computeIfAbsent(var, v -> aliasSupplier.get());
+
+        return term(
+                columns.get(var),
+                termAlias + ".name",
+                vars.get(var) == SQLVarType.NAMED_GRAPH ? "NULL::varchar" : termAlias + ".type"
+        );
+    }
+
+    private SQLExpr translateConstant(NodeValue nodeValue) {
+        Node node = nodeValue.asNode();
+
+        // a lifted constant keeps the kind of its value as datatype
+        if (node.isLiteral() && node.getLiteralDatatypeURI().equals(ConstantLiftingTransform.NUMBER_TYPE)) {
+            return value(Kind.NUMERIC, param(node, SQLVarType.NUMBER));
+        }
+        if (node.isLiteral() && node.getLiteralDatatypeURI().equals(ConstantLiftingTransform.DATE_TIME_TYPE)) {
+            return value(Kind.DATE_TIME, "try_cast_timestamptz(" + param(node, SQLVarType.STRING) + ")");
+        }
+        if (node.isLiteral() && node.getLiteralDatatypeURI().equals(ConstantLiftingTransform.STRING_TYPE)) {
+            return value(Kind.STRING, param(node, SQLVarType.STRING));
+        }
+        if (nodeValue.isNumber()) {
+            try {
+                nodeValue.getDecimal();
+            } catch (ExprEvalException | NumberFormatException e) {
+                throw new SPARQLTranslationException("The number " + nodeValue + " isn't supported");
+            }
+            return value(Kind.NUMERIC, param(node, SQLVarType.NUMBER));
+        }
+        if (nodeValue.isBoolean()) {
+            return bool(nodeValue.getBoolean() ? "TRUE" : "FALSE");
+        }
+        if (nodeValue.isDateTime() || nodeValue.isDate()) {
+            return value(Kind.DATE_TIME, "try_cast_timestamptz(" + param(node, SQLVarType.STRING) + ")");
+        }
+        if (nodeValue.isString() || nodeValue.isLangString()) {
+            return value(Kind.STRING, param(node, SQLVarType.STRING));
+        }
+        if (node.isURI()) {
+            return term(param(node, SQLVarType.TERM), param(node, SQLVarType.STRING), "NULL::varchar");
+        }
+        if (node.isLiteral()) {
+            return term(param(node, SQLVarType.TERM), param(node, SQLVarType.STRING), quote(node.getLiteralDatatype().toString()));
+        }
+
+        throw unsupported(nodeValue);
+    }
+
+    /**
+     * @param node The constant
+     * @param type The dictionary id (<code>TERM</code>), the numeric value (<code>NUMBER</code>)
+     *             or the lexical form (<code>STRING</code>) of the constant
+     * @return The column of the constant inside the join of the constants
+     */
+    private String param(Node node, SQLVarType type) {
+        if (paramAlias == null) {
+            paramAlias = aliasSupplier.get();
+        }
+
+        return paramAlias + "." + params.computeIfAbsent(new SQLParameter(node, type, true), param -> "c" + params.size());
+    }
+
+    /**
+     * Compares the operands as numbers, dates, strings or terms depending on their type
+     */
+    private SQLExpr compare(ExprFunction2 expr, String operator) {
+        SQLExpr left = translate(expr.getArg1());
+        SQLExpr right = translate(expr.getArg2());
+        Set<Kind> kinds = EnumSet.of(left.kind(), right.kind());
+
+        if (kinds.contains(Kind.NUMERIC)) {
+            return bool("(" + numeric(left) + " " + operator + " " + numeric(right) + ")");
+        }
+        if (kinds.contains(Kind.DATE_TIME)) {
+            return bool("(" + dateTime(left) + " " + operator + " " + dateTime(right) + ")");
+        }
+        if (kinds.contains(Kind.STRING)) {
+            return bool("(" + string(left) + " " + operator + " " + string(right) + ")");
+        }
+        if (kinds.contains(Kind.BOOLEAN)) {
+            return bool("(" + boolValue(left) + " " + operator + " " + boolValue(right) + ")");
+        }
+        if (operator.equals("=") || operator.equals("<>")) {
+            return bool("(" + id(left, expr) + " " + operator + " " + id(right, expr) + ")");
+        }
+
+        if (kinds.equals(EnumSet.of(Kind.TERM))) {
+            return compareTerms(left, right, operator);
+        }
+
+        return bool("(" + lexicalForm(left, expr) + " " + operator + " " + lexicalForm(right, expr) + ")");
+    }
+
+    /**
+     * Compares two terms as numbers when both are numeric, as dates when both are dates,
+     * otherwise by lexical form (code point order, like the order keys)
+     */
+    private SQLExpr compareTerms(SQLExpr left, SQLExpr right, String operator) {
+        return bool("(CASE" +
+                " WHEN " + numeric(left) + " IS NOT NULL AND " + numeric(right) + " IS NOT NULL" +
+                " THEN " + numeric(left) + " " + operator + " " + numeric(right) +
+                " WHEN " + dateTime(left) + " IS NOT NULL AND " + dateTime(right) + " IS NOT NULL" +
+                " THEN " + dateTime(left) + " " + operator + " " + dateTime(right) +
+                " ELSE " + left.name() + " COLLATE \"C\" " + operator + " " + right.name() + " COLLATE \"C\"" +
+                " END)");
+    }
+
+    private SQLExpr arithmetic(ExprFunction2 expr, String operator) {
+        return value(
+                Kind.NUMERIC,
+                "(" + numeric(translate(expr.getArg1())) + " " + operator + " " + numeric(translate(expr.getArg2())) + ")"
+        );
+    }
+
+    private SQLExpr translateRegex(E_Regex regex) {
+        String flags = "";
+
+        if (regex.numArgs() > 2) {
+            if (!(regex.getArg(3) instanceof NodeValue flagsValue) || !flagsValue.isString()) {
+                throw unsupported(regex);
+            }
+            flags = flagsValue.getString();
+        }
+        if (!flags.isEmpty() && !flags.equals("i")) {
+            throw new SPARQLTranslationException("The regex flags " + flags + " aren't supported");
+        }
+
+        return bool("(" + string(translate(regex.getArg(1))) +
+                (flags.isEmpty() ? " ~ " : " ~* ") +
+                string(translate(regex.getArg(2))) + ")");
+    }
+
+    /**
+     * The terms are ordered by numeric value, then by date, then by lexical form
+     */
+    private SQLValue translateMinMax(Expr expr, String function, String direction) {
+        SQLValue value = translateValue(expr);
+
+        if (value.type() != SQLVarType.TERM) {
+            return new SQLValue(value.type(), function + "(" + value.sql() + ")");
+        }
+
+        SQLExpr term = translate(expr);
+
+        return new SQLValue(SQLVarType.TERM, "(array_agg(" + term.sql() +
+                " ORDER BY " + numeric(term) + " " + direction + " NULLS LAST, " +
+                dateTime(term) + " " + direction + " NULLS LAST, " +
+                term.name() + " COLLATE \"C\" " + direction +
+                ") FILTER (WHERE " + term.sql() + " IS NOT NULL))[1]");
+    }
+
+    private SQLValue translateGroupConcat(Expr expr, String distinct, String separator) {
+        return new SQLValue(
+                SQLVarType.STRING,
+                "coalesce(string_agg(" + distinct + text(translate(expr)) + ", " + quote(separator == null ? " " : separator) + "), '')"
+        );
+    }
+
+    private String numeric(SQLExpr sqlExpr) {
+        return switch (sqlExpr.kind()) {
+            case NUMERIC -> sqlExpr.sql();
+            case TERM -> "(CASE WHEN " + sqlExpr.name() + " ~ " + quote(NUMERIC_PATTERN) +
+                    " AND (" + sqlExpr.type() + " IN (" + quoteAll(NUMERIC_TYPES) + ")" +
+                    " OR " + sqlExpr.type() + " NOT LIKE " + quote(XSD_TYPE_PREFIX + "%") + ")" +
+                    " THEN CAST(" + sqlExpr.name() + " AS numeric) END)";
+            default -> "NULL::numeric";
+        };
+    }
+
+    private String dateTime(SQLExpr sqlExpr) {
+        return switch (sqlExpr.kind()) {
+            case DATE_TIME -> sqlExpr.sql();
+            case TERM -> "(CASE WHEN " + sqlExpr.type() + " IN (" + quoteAll(DATE_TIME_TYPES) + ")" +
+                    " AND " + sqlExpr.name() + " ~ " + quote(DATE_TIME_PATTERN) +
+                    " THEN try_cast_timestamptz(" + sqlExpr.name() + ") END)";
+            default -> "NULL::timestamptz";
+        };
+    }
+
+    private String string(SQLExpr sqlExpr) {
+        return switch (sqlExpr.kind()) {
+            case STRING -> sqlExpr.sql();
+            case TERM -> "(CASE WHEN " + sqlExpr.type() + " IN (" + quoteAll(STRING_TYPES) + ") THEN " + sqlExpr.name() + " END)";
+            default -> "NULL::text";
+        };
+    }
+
+    private String boolValue(SQLExpr sqlExpr) {
+        return switch (sqlExpr.kind()) {
+            case BOOLEAN -> sqlExpr.sql();
+            case TERM -> "(CASE WHEN " + sqlExpr.type() + " = " + quote(XSDDatatype.XSDboolean.toString()) +
+                    " THEN " + sqlExpr.name() + " IN ('true', '1') END)";
+            default -> "NULL::boolean";
+        };
+    }
+
+    private String text(SQLExpr sqlExpr) {
+        return switch (sqlExpr.kind()) {
+            case TERM -> sqlExpr.name();
+            case STRING -> sqlExpr.sql();
+            case NUMERIC -> "CAST(trim_scale(" + sqlExpr.sql() + ") AS text)";
+            case DATE_TIME -> "CAST(" + sqlExpr.sql() + " AS text)";
+            case BOOLEAN -> "(CASE WHEN " + sqlExpr.sql() + " THEN 'true' WHEN NOT " + sqlExpr.sql() + " THEN 'false' END)";
+        };
+    }
+
+    private String lexicalForm(SQLExpr sqlExpr, Expr expr) {
+        return switch (sqlExpr.kind()) {
+            case TERM -> sqlExpr.name();
+            case STRING -> sqlExpr.sql();
+            default -> throw unsupported(expr);
+        };
+    }
+
+    private String id(SQLExpr sqlExpr, Expr expr) {
+        if (sqlExpr.kind() != Kind.TERM) {
+            throw unsupported(expr);
+        }
+
+        return sqlExpr.sql();
+    }
+
+    private String type(SQLExpr sqlExpr) {
+        if (sqlExpr.kind() != Kind.TERM) {
+            return quote("literal");
+        }
+
+        return sqlExpr.type();
+    }
+
+    /**
+     * @param sql The translation of an expression
+     * @return The same translation, whose dictionary joins are required
+     */
+    private String used(String sql) {
+        translations.add(sql);
+
+        return sql;
+    }
+
+    private boolean isUsed(String termAlias) {
+        Pattern pattern = Pattern.compile("\\b" + Pattern.quote(termAlias) + "\\.");
+
+        return translations.stream().anyMatch(sql -> pattern.matcher(sql).find());
+    }
+
+    private static SQLExpr bool(String sql) {
+        return value(Kind.BOOLEAN, sql);
+    }
+
+    private static SQLExpr value(Kind kind, String sql) {
+        return new SQLExpr(kind, sql, null, null);
+    }
+
+    private static SQLExpr term(String id, String name, String type) {
+        return new SQLExpr(Kind.TERM, id, name, type);
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static String quoteAll(List<String> values) {
+        return values.stream().map(SPARQLtoSQLExprTranslator::quote).collect(Collectors.joining(", "));
+    }
+
+    private static SPARQLTranslationException unsupported(Expr expr) {
+        return new SPARQLTranslationException("The expression " + expr + " isn't supported");
+    }
+
+    /**
+     * @param type The type of the value
+     * @param sql  The SQL expression of the value
+     */
+    public record SQLValue(SQLVarType type, String sql) {
+    }
+
+    private enum Kind {
+        TERM, NUMERIC, DATE_TIME, STRING, BOOLEAN
+    }
+
+    /**
+     * @param kind The type of the expression
+     * @param sql  The SQL expression (the id for a term)
+     * @param name The SQL expression of the lexical form (terms only)
+     * @param type The SQL expression of the literal type, <code>NULL</code> for a resource (terms only)
+     */
+    private record SQLExpr(Kind kind, String sql, String name, String type) {
+    }
+}
@@ -0,0 +1,151 @@
+package fr.vcity.sparqltosql.utils;
+
+import fr.vcity.sparqltosql.exceptions.SPARQLTranslationException;
+import fr.vcity.sparqltosql.model.SQLParameter;
+import fr.vcity.sparqltosql.model.SQLVarType;
+import fr.vcity.sparqltosql.repository.IRDFValidityStorage;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Translates the graph of the quad patterns into SQL conditions over <code>versioned_quad</code>:
+ * <ul>
+ *     <li><code>GRAPH &lt;…/Version#3&gt;</code> matches the quads of every named graph valid in the version 3,
+ *     <code>GRAPH &lt;…/Version#3-40&gt;</code> (or <code>#1,3</code>) the quads valid in at least one of the versions</li>
+ *     <li><code>GRAPH &lt;…/Validity#1011&gt;</code> matches the quads of every named graph with this validity
+ *     over the first versions</li>
+ *     <li><code>GRAPH ?validity</code> binds the validity of the quads (one bit per version)</li>
+ *     <li>the other graphs are the named graphs</li>
+ * </ul>
+ * The version questions are evaluated by the validity storage against a single mask of the versions.
+ */
+public class SPARQLtoSQLGraphTranslator {
+
+    /**
+     * The name of the graph variable bound to the validity of the quads
+     */
+    public static final String VALIDITY_VARIABLE = "validity";
+
+    private static final String VALIDITY_PATTERN = "/Validity#";
+    private static final String VERSION_PATTERN = "/Version#";
+    private static final Pattern VALIDITY_ANCHOR = Pattern.compile("[01]+");
+    private static final Pattern VERSION_ANCHOR = Pattern.compile("\\d{1,5}(-\\d{1,5})?(,\\d{1,5}(-\\d{1,5})?)*");
+
+    private final IRDFValidityStorage rdfValidityStorage;
+
+    /**
+     * @param rdfValidityStorage The storage of the validity
+     */
+    public SPARQLtoSQLGraphTranslator(IRDFValidityStorage rdfValidityStorage) {
+        this.rdfValidityStorage = rdfValidityStorage;
+    }
+
+    /**
+     * @param graph  The constant graph of the pattern
+     * @param alias  The alias of the <code>versioned_quad</code> table
+     * @param params The parameters of the condition
+     * @return The SQL condition of the graph, empty for the default graph (every named graph)
+     */
+    public Optional<String> getCondition(Node graph, String alias, List<SQLParameter> params) {
+        if (Quad.isDefaultGraph(graph) || Quad.isUnionGraph(graph)) {
+            return Optional.empty();
+        }
+
+        String uri = graph.toString();
+
+        if (uri.contains(VERSION_PATTERN)) {
+            String mask = getVersionMask(getAnchorValueFromURI(uri));
+
+            return Optional.of(mask.indexOf('1') == mask.length() - 1
+                    ? rdfValidityStorage.getVersionCondition(alias, mask.length() - 1)
+                    : rdfValidityStorage.getAnyVersionCondition(alias, mask));
+        }
+        if (uri.contains(VALIDITY_PATTERN)) {
+            String validity = getAnchorValueFromURI(uri);
+
+            if (!VALIDITY_ANCHOR.matcher(validity).matches()) {
+                throw new SPARQLTranslationException("The validity graph " + uri + " isn't a bit string");
+            }
+
+            return Optional.of(rdfValidityStorage.getValidityCondition(alias, validity));
+        }
+
+        params.add(new SQLParameter(graph, SQLVarType.NAMED_GRAPH));
+        return Optional.of(alias + ".id_named_graph = ?");
+    }
+
+    /**
+     * @param graph The graph variable of the pattern
+     * @param alias The alias of the <code>versioned_quad</code> table
+     * @return The SQL expression bound to the variable
+     */
+    public String getColumn(Node graph, String alias) {
+        return isValidityVariable(graph)
+                ? rdfValidityStorage.getValidityExpression(alias)
+                : alias + ".id_named_graph";
+    }
+
+    /**
+     * @param graph The graph variable of the pattern
+     * @return The domain of the variable
+     */
+    public SQLVarType getType(Node graph) {
+        return isValidityVariable(graph) ? SQLVarType.VALIDITY : SQLVarType.NAMED_GRAPH;
+    }
+
+    /**
+     * @param graph The graph of the pattern
+     * @return The named graph URI, empty if the pattern matches the quads of every named graph or the graph is a variable
+     */
+    public static Optional<String> getNamedGraph(Node graph) {
+        if (!graph.isURI() || Quad.isDefaultGraph(graph) || Quad.isUnionGraph(graph)) {
+            return Optional.empty();
+        }
+
+        String uri = graph.getURI();
+
+        return uri.contains(VERSION_PATTERN) || uri.contains(VALIDITY_PATTERN) ? Optional.empty() : Optional.of(uri);
+    }
+
+    private static boolean isValidityVariable(Node graph) {
+        return graph.isVariable() && graph.getName().equals(VALIDITY_VARIABLE);
+    }
+
+    /**
+     * @param versions The versions (e.g. <code>3</code>, <code>3-40</code> or <code>1,3</code>)
+     * @return The bit string of one bit per version, up to the last one
+     */
+    private static String getVersionMask(String versions) {
+        if (!VERSION_ANCHOR.matcher(versions).matches()) {
+            throw new SPARQLTranslationException("The version graph #" + versions + " isn't a list of versions");
+        }
+
+        StringBuilder mask = new StringBuilder();
+
+        for (String range : versions.split(",")) {
+            String[] bounds = range.split("-");
+            int from = Integer.parseInt(bounds[0]);
+            int to = Integer.parseInt(bounds[bounds.length - 1]);
+
+            if (to < from) {
+                throw new SPARQLTranslationException("The version range " + range + " is empty");
+            }
+            if (mask.length() <= to) {
+                mask.append("0".repeat(to + 1 - mask.length()));
+            }
+            for (int version = from; version <= to; version++) {
+                mask.setCharAt(version, '1');
+            }
+        }
+
+        return mask.toString();
+    }
+
+    private static String getAnchorValueFromURI(String uri) {
+        return uri.substring(uri.indexOf('#') + 1);
+    }
+}
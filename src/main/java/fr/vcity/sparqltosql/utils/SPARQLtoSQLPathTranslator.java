@@ -0,0 +1,357 @@
+package fr.vcity.sparqltosql.utils;
+
+import fr.vcity.sparqltosql.exceptions.SPARQLTranslationException;
+import fr.vcity.sparqltosql.model.SQLParameter;
+import fr.vcity.sparqltosql.model.SQLQuery;
+import fr.vcity.sparqltosql.model.SQLVarType;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.path.*;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static fr.vcity.sparqltosql.model.SQLQuery.column;
+
+/**
+ * Translates the SPARQL property paths into SQL relations <code>(s, o)</code> over the ids of <code>versioned_quad</code>.
+ * The <code>+</code> and <code>*</code> paths are evaluated by a <code>WITH RECURSIVE</code> query: its <code>UNION</code>
+ * keeps each pair once, so the traversal stops on cycles.
+ * <br />A constant end of the path is pushed inside the recursion (the traversal starts from it), and the graph of the
+ * path filters every step (a version graph is checked inside the recursion).
+ * Inside <code>GRAPH ?g</code>, all the steps of a path stay inside the same named graph (or the same validity).
+ */
+public class SPARQLtoSQLPathTranslator {
+
+    private final Node graph;
+    private final SPARQLtoSQLGraphTranslator graphTranslator;
+    private final Supplier<String> aliasSupplier;
+
+    /**
+     * @param graph           The graph of the path (the default graph matches the quads of every named graph)
+     * @param graphTranslator The translator of the graph conditions
+     * @param aliasSupplier   The supplier of unique aliases
+     */
+    public SPARQLtoSQLPathTranslator(Node graph, SPARQLtoSQLGraphTranslator graphTranslator, Supplier<String> aliasSupplier) {
+        this.graph = graph;
+        this.graphTranslator = graphTranslator;
+        this.aliasSupplier = aliasSupplier;
+    }
+
+    /**
+     * @param triplePath The path pattern
+     * @return The translated path pattern
+     */
+    public SQLQuery translate(TriplePath triplePath) {
+        Node subject = triplePath.getSubject();
+        Node object = triplePath.getObject();
+        // the traversal starts from the constant end of the path
+        boolean reversed = subject.isVariable() && !object.isVariable();
+        PathSQL pathSQL = reversed
+                ? relation(invert(triplePath.getPath()), object)
+                : relation(triplePath.getPath(), subject.isVariable() ? null : subject);
+
+        String alias = aliasSupplier.get();
+        String subjectColumn = alias + (reversed ? ".o" : ".s");
+        String objectColumn = alias + (reversed ? ".s" : ".o");
+        Map<String, SQLVarType> vars = new LinkedHashMap<>();
+        Map<String, String> varColumns = new HashMap<>();
+        List<String> where = new ArrayList<>();
+        List<SQLParameter> params = new ArrayList<>(pathSQL.params());
+
+        bind(subject, subjectColumn, SQLVarType.TERM, vars, varColumns, where, params);
+        bind(object, objectColumn, SQLVarType.TERM, vars, varColumns, where, params);
+        if (isGraphVariable()) {
+            bind(graph, alias + ".g", graphTranslator.getType(graph), vars, varColumns, where, params);
+        }
+
+        return new SQLQuery(
+                "SELECT " + String.join(", ", vars.keySet().stream().map(var -> varColumns.get(var) + " AS " + column(var)).toList()) +
+                        " FROM (" + pathSQL.sql() + ") " + alias +
+                        (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where)),
+                vars,
+                params
+        );
+    }
+
+    private static void bind(
+            Node node,
+            String column,
+            SQLVarType type,
+            Map<String, SQLVarType> vars,
+            Map<String, String> varColumns,
+            List<String> where,
+            List<SQLParameter> params
+    ) {
+        if (!node.isVariable()) {
+            where.add(column + " = ?");
+            params.add(new SQLParameter(node, type));
+        } else if (vars.containsKey(node.getName())) {
+            if (vars.get(node.getName()) != type) {
+                throw new SPARQLTranslationException("The variable ?" + node.getName() + " can't be both a " + type + " and a " + vars.get(node.getName()));
+            }
+            where.add(column + " = " + varColumns.get(node.getName()));
+        } else {
+            vars.put(node.getName(), type);
+            varColumns.put(node.getName(), column);
+        }
+    }
+
+    /**
+     * @param path The path
+     * @param seed The start of the path, or <code>null</code> if any node can start it
+     * @return The pairs of nodes linked by the path (with their graph inside <code>GRAPH ?g</code>)
+     */
+    private PathSQL relation(Path path, Node seed) {
+        if (path instanceof P_Link link) {
+            return edges(List.of(link.getNode()), true, false, seed);
+        }
+        if (path instanceof P_ReverseLink reverseLink) {
+            return edges(List.of(reverseLink.getNode()), false, false, seed);
+        }
+        if (path instanceof P_NegPropSet negPropSet) {
+            return negatedEdges(negPropSet, seed);
+        }
+        if (path instanceof P_Inverse inverse) {
+            return relation(invert(inverse.getSubPath()), seed);
+        }
+        if (path instanceof P_Seq seq) {
+            return sequence(relation(seq.getLeft(), seed), relation(seq.getRight(), null));
+        }
+        if (path instanceof P_Alt alt) {
+            return union(relation(alt.getLeft(), seed), relation(alt.getRight(), seed), true);
+        }
+        if (path instanceof P_OneOrMore1 || path instanceof P_OneOrMoreN) {
+            Path subPath = ((P_Path1) path).getSubPath();
+            return closure(relation(subPath, seed), relation(subPath, null));
+        }
+        if (path instanceof P_ZeroOrMore1 || path instanceof P_ZeroOrMoreN) {
+            Path subPath = ((P_Path1) path).getSubPath();
+            return closure(identity(seed), relation(subPath, null));
+        }
+        if (path instanceof P_ZeroOrOne zeroOrOne) {
+            return union(identity(seed), relation(zeroOrOne.getSubPath(), seed), false);
+        }
+
+        throw new SPARQLTranslationException("The property path " + path + " isn't supported");
+    }
+
+    /**
+     * @param path The path
+     * @return The path from the object to the subject
+     */
+    private static Path invert(Path path) {
+        if (path instanceof P_Link link) {
+            return new P_ReverseLink(link.getNode());
+        }
+        if (path instanceof P_ReverseLink reverseLink) {
+            return new P_Link(reverseLink.getNode());
+        }
+        if (path instanceof P_NegPropSet negPropSet) {
+            P_NegPropSet inverted = new P_NegPropSet();
+            negPropSet.getNodes().forEach(node -> inverted.add((P_Path0) invert(node)));
+            return inverted;
+        }
+        if (path instanceof P_Inverse inverse) {
+            return inverse.getSubPath();
+        }
+        if (path instanceof P_Seq seq) {
+            return new P_Seq(invert(seq.getRight()), invert(seq.getLeft()));
+        }
+        if (path instanceof P_Alt alt) {
+            return new P_Alt(invert(alt.getLeft()), invert(alt.getRight()));
+        }
+        if (path instanceof P_OneOrMore1 oneOrMore) {
+            return new P_OneOrMore1(invert(oneOrMore.getSubPath()));
+        }
+        if (path instanceof P_OneOrMoreN oneOrMore) {
+            return new P_OneOrMoreN(invert(oneOrMore.getSubPath()));
+        }
+        if (path instanceof P_ZeroOrMore1 zeroOrMore) {
+            return new P_ZeroOrMore1(invert(zeroOrMore.getSubPath()));
+        }
+        if (path instanceof P_ZeroOrMoreN zeroOrMore) {
+            return new P_ZeroOrMoreN(invert(zeroOrMore.getSubPath()));
+        }
+        if (path instanceof P_ZeroOrOne zeroOrOne) {
+            return new P_ZeroOrOne(invert(zeroOrOne.getSubPath()));
+        }
+
+        throw new SPARQLTranslationException("The property path " + path + " isn't supported");
+    }
+
+    /**
+     * @param properties The properties of the edges
+     * @param forward    <code>false</code> to follow the edges from the object to the subject
+     * @param negated    <code>true</code> to follow the edges of every other property
+     * @param seed       The start of the edges, or <code>null</code>
+     * @return The edges of the properties
+     */
+    private PathSQL edges(List<Node> properties, boolean forward, boolean negated, Node seed) {
+        String alias = aliasSupplier.get();
+        String start = alias + (forward ? ".id_subject" : ".id_object");
+        String end = alias + (forward ? ".id_object" : ".id_subject");
+        List<String> where = new ArrayList<>();
+        List<SQLParameter> params = new ArrayList<>();
+
+        if (!properties.isEmpty()) {
+            where.add(alias + ".id_property" + (negated ? " NOT IN (" : " IN (") +
+                    String.join(", ", Collections.nCopies(properties.size(), "?")) + ")");
+            properties.forEach(property -> params.add(new SQLParameter(property, SQLVarType.TERM)));
+        }
+        if (!isGraphVariable()) {
+            graphTranslator.getCondition(graph, alias, params).ifPresent(where::add);
+        }
+        if (seed != null) {
+            where.add(start + " = ?");
+            params.add(new SQLParameter(seed, SQLVarType.TERM));
+        }
+
+        return new PathSQL(
+                "SELECT " + start + " AS s, " + end + " AS o" + graphColumn(graphTranslator.getColumn(graph, alias)) +
+                        " FROM versioned_quad " + alias +
+                        (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where)),
+                params
+        );
+    }
+
+    /**
+     * <code>!(p1|^p2)</code> follows the forward edges of every property but <code>p1</code>
+     * and the backward edges of every property but <code>p2</code>
+     */
+    private PathSQL negatedEdges(P_NegPropSet negPropSet, Node seed) {
+        List<Node> forwardNodes = negPropSet.getFwdNodes();
+        List<Node> backwardNodes = negPropSet.getBwdNodes();
+
+        if (backwardNodes.isEmpty()) {
+            return edges(forwardNodes, true, true, seed);
+        }
+        if (forwardNodes.isEmpty()) {
+            return edges(backwardNodes, false, true, seed);
+        }
+
+        return union(edges(forwardNodes, true, true, seed), edges(backwardNodes, false, true, seed), true);
+    }
+
+    /**
+     * @param seed The start of the path, or <code>null</code>
+     * @return The zero length path of each node of the graph
+     */
+    private PathSQL identity(Node seed) {
+        if (seed != null && !isGraphVariable()) {
+            return new PathSQL(
+                    "SELECT CAST(? AS integer) AS s, CAST(? AS integer) AS o",
+                    List.of(new SQLParameter(seed, SQLVarType.TERM), new SQLParameter(seed, SQLVarType.TERM))
+            );
+        }
+
+        String subjectAlias = aliasSupplier.get();
+        String objectAlias = aliasSupplier.get();
+        List<SQLParameter> params = new ArrayList<>();
+        String subjectWhere = nodeCondition(subjectAlias, subjectAlias + ".id_subject", seed, params);
+        String objectWhere = nodeCondition(objectAlias, objectAlias + ".id_object", seed, params);
+
+        return new PathSQL(
+                "SELECT " + subjectAlias + ".id_subject AS s, " + subjectAlias + ".id_subject AS o" +
+                        graphColumn(graphTranslator.getColumn(graph, subjectAlias)) +
+                        " FROM versioned_quad " + subjectAlias + subjectWhere +
+                        " UNION SELECT " + objectAlias + ".id_object, " + objectAlias + ".id_object" +
+                        graphColumn(graphTranslator.getColumn(graph, objectAlias)) +
+                        " FROM versioned_quad " + objectAlias + objectWhere,
+                params
+        );
+    }
+
+    private String nodeCondition(String alias, String column, Node seed, List<SQLParameter> params) {
+        List<String> where = new ArrayList<>();
+
+        if (!isGraphVariable()) {
+            graphTranslator.getCondition(graph, alias, params).ifPresent(where::add);
+        }
+        if (seed != null) {
+            where.add(column + " = ?");
+            params.add(new SQLParameter(seed, SQLVarType.TERM));
+        }
+
+        return where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where);
+    }
+
+    /**
+     * @param left  The first path
+     * @param right The second path
+     * @return The pairs of nodes linked by the first path then the second one
+     */
+    private PathSQL sequence(PathSQL left, PathSQL right) {
+        String leftAlias = aliasSupplier.get();
+        String rightAlias = aliasSupplier.get();
+        List<SQLParameter> params = new ArrayList<>(left.params());
+        params.addAll(right.params());
+
+        return new PathSQL(
+                "SELECT " + leftAlias + ".s, " + rightAlias + ".o" + graphColumn(leftAlias + ".g") +
+                        " FROM (" + left.sql() + ") " + leftAlias +
+                        " JOIN (" + right.sql() + ") " + rightAlias +
+                        " ON " + rightAlias + ".s = " + leftAlias + ".o" + sameGraph(leftAlias, rightAlias),
+                params
+        );
+    }
+
+    /**
+     * @param all <code>false</code> to remove the duplicates
+     */
+    private PathSQL union(PathSQL left, PathSQL right, boolean all) {
+        List<SQLParameter> params = new ArrayList<>(left.params());
+        params.addAll(right.params());
+
+        return new PathSQL(
+                "SELECT * FROM (" + left.sql() + ") " + aliasSupplier.get() +
+                        (all ? " UNION ALL " : " UNION ") +
+                        "SELECT * FROM (" + right.sql() + ") " + aliasSupplier.get(),
+                params
+        );
+    }
+
+    /**
+     * @param start The first pairs of the traversal
+     * @param step  The path followed from the end of each pair
+     * @return The distinct pairs reached by following the step any number of times from the start
+     */
+    private PathSQL closure(PathSQL start, PathSQL step) {
+        String recursiveAlias = aliasSupplier.get();
+        String startAlias = aliasSupplier.get();
+        String stepAlias = aliasSupplier.get();
+        List<SQLParameter> params = new ArrayList<>(start.params());
+        params.addAll(step.params());
+
+        return new PathSQL(
+                "WITH RECURSIVE " + recursiveAlias + "(s, o" + (isGraphVariable() ? ", g" : "") + ") AS (" +
+                        "SELECT * FROM (" + start.sql() + ") " + startAlias +
+                        " UNION " +
+                        "SELECT " + recursiveAlias + ".s, " + stepAlias + ".o" + graphColumn(recursiveAlias + ".g") +
+                        " FROM " + recursiveAlias +
+                        " JOIN (" + step.sql() + ") " + stepAlias +
+                        " ON " + stepAlias + ".s = " + recursiveAlias + ".o" + sameGraph(recursiveAlias, stepAlias) +
+                        ") SELECT * FROM " + recursiveAlias,
+                params
+        );
+    }
+
+    private String graphColumn(String column) {
+        return isGraphVariable() ? ", " + column + " AS g" : "";
+    }
+
+    private String sameGraph(String leftAlias, String rightAlias) {
+        return isGraphVariable() ? " AND " + rightAlias + ".g = " + leftAlias + ".g" : "";
+    }
+
+    private boolean isGraphVariable() {
+        return graph.isVariable();
+    }
+
+    /**
+     * @param sql    The SQL relation <code>(s, o)</code>, and <code>g</code> inside <code>GRAPH ?g</code>
+     * @param params The constants bound to its <code>?</code> placeholders, in order
+     */
+    private record PathSQL(String sql, List<SQLParameter> params) {
+    }
+}
@@ -1,16 +1,66 @@
 package fr.vcity.sparqltosql.utils;
 
-
-
+import fr.vcity.sparqltosql.exceptions.SPARQLTranslationException;
+import fr.vcity.sparqltosql.model.RDFStatistics;
+import fr.vcity.sparqltosql.model.SQLParameter;
+import fr.vcity.sparqltosql.model.SQLQuery;
+import fr.vcity.sparqltosql.model.SQLVarType;
+import fr.vcity.sparqltosql.repository.IRDFValidityStorage;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.SortCondition;
+import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.OpVisitor;
 import org.apache.jena.sparql.algebra.op.*;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprVar;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static fr.vcity.sparqltosql.model.SQLQuery.RANK;
+import static fr.vcity.sparqltosql.model.SQLQuery.column;
 
+/**
+ * Translates the algebra (in quad form) of a SPARQL query into a single SQL query over the ids of <code>versioned_quad</code>.
+ * The operators are visited bottom-up: each visit pops the translations of its sub operators and pushes its own.
+ * <br />The constants are bound as parameters, resolved to their dictionary ids before the query runs.
+ * The patterns outside a <code>GRAPH</code> match the quads of every named graph,
+ * the version and validity graphs are translated by {@link SPARQLtoSQLGraphTranslator}.
+ */
 @Slf4j
 public class SPARQLtoSQLVisitor implements OpVisitor {
 
-    private static final String VALIDITY_PATTERN = "/Validity#";
-    private static final String VERSION_PATTERN = "/Version#";
+    private final Deque<SQLQuery> sqlQueries = new ArrayDeque<>();
+    private final SPARQLtoSQLGraphTranslator graphTranslator;
+    private final RDFStatistics statistics;
+    private int aliasCount = 0;
+
+    /**
+     * @param rdfValidityStorage The storage of the validity, evaluating the version graphs
+     * @param statistics         The cardinalities ordering the joins of the quad patterns
+     */
+    public SPARQLtoSQLVisitor(IRDFValidityStorage rdfValidityStorage, RDFStatistics statistics) {
+        this.graphTranslator = new SPARQLtoSQLGraphTranslator(rdfValidityStorage);
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return The translation of the visited operator
+     */
+    public SQLQuery getSQLQuery() {
+        if (sqlQueries.size() != 1) {
+            throw new SPARQLTranslationException("The query couldn't be translated");
+        }
+
+        return sqlQueries.peek();
+    }
 
     /**
      * gets the list of triple from the Basic Graph Pattern
@@ -20,65 +70,75 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
     @Override
     public void visit(OpBGP opBGP) {
         log.debug("Visiting OpBGP size: {}", opBGP.getPattern().size());
-        opBGP
-                .getPattern()
-                .getList()
-                .forEach(triple -> log.debug("Triple: {}", triple.toString()));
-        log.debug("-----------------");
+        sqlQueries.push(translateQuads(
+                opBGP.getPattern()
+                        .getList()
+                        .stream()
+                        .map(triple -> new Quad(Quad.defaultGraphNodeGenerated, triple))
+                        .toList()
+        ));
     }
 
     /**
-     * @param quadPattern
+     * @param quadPattern the quads of a Basic Graph Pattern
      */
     @Override
     public void visit(OpQuadPattern quadPattern) {
-        log.debug("Visiting OpQuadPattern");
-        log.debug("-----------------");
+        log.debug("Visiting OpQuadPattern size: {}", quadPattern.getPattern().size());
+        sqlQueries.push(translateQuads(quadPattern.getPattern().getList()));
     }
 
     /**
-     * @param quadBlock
+     * @param quadBlock the quads of a Basic Graph Pattern
      */
     @Override
     public void visit(OpQuadBlock quadBlock) {
-        log.debug("Visiting OpQuadBlock");
-        log.debug("-----------------");
+        log.debug("Visiting OpQuadBlock size: {}", quadBlock.getPattern().size());
+        sqlQueries.push(translateQuads(quadBlock.getPattern().getList()));
     }
 
     /**
-     * @param opTriple
+     * @param opTriple the triple of the default graph
      */
     @Override
     public void visit(OpTriple opTriple) {
         log.debug("Visiting OpTriple");
-        log.debug("-----------------");
+        sqlQueries.push(translateQuads(List.of(new Quad(Quad.defaultGraphNodeGenerated, opTriple.getTriple()))));
     }
 
     /**
-     * @param opQuad
+     * @param opQuad the quad
      */
     @Override
     public void visit(OpQuad opQuad) {
         log.debug("Visiting OpQuad");
-        log.debug("-----------------");
+        sqlQueries.push(translateQuads(List.of(opQuad.getQuad())));
     }
 
     /**
-     * @param opPath
+     * Translates the property path of the default graph (the path of a <code>GRAPH</code> is translated by its graph)
+     *
+     * @param opPath the path operator
      */
     @Override
     public void visit(OpPath opPath) {
-        log.debug("Visiting OpPath");
-        log.debug("-----------------");
+        log.debug("Visiting OpPath: {}", opPath.getTriplePath());
+        sqlQueries.push(new SPARQLtoSQLPathTranslator(Quad.defaultGraphNodeGenerated, graphTranslator, this::nextAlias)
+                .translate(opPath.getTriplePath()));
     }
 
     /**
-     * @param opTable
+     * @param opTable the table (only the empty pattern is supported)
      */
     @Override
     public void visit(OpTable opTable) {
         log.debug("Visiting OpTable");
-        log.debug("-----------------");
+
+        if (!opTable.isJoinIdentity()) {
+            throw unsupported(opTable);
+        }
+
+        sqlQueries.push(translateQuads(List.of()));
     }
 
     /**
@@ -86,8 +146,7 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpNull opNull) {
-        log.debug("Visiting OpNull");
-        log.debug("-----------------");
+        throw unsupported(opNull);
     }
 
     /**
@@ -95,8 +154,7 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpProcedure opProc) {
-        log.debug("Visiting OpProcedure");
-        log.debug("-----------------");
+        throw unsupported(opProc);
     }
 
     /**
@@ -104,38 +162,55 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpPropFunc opPropFunc) {
-        log.debug("Visiting OpPropFunc");
-        log.debug("-----------------");
+        throw unsupported(opPropFunc);
     }
 
     /**
-     * @param opFilter
+     * Translates the filter expressions into the WHERE clause, so that the solutions are discarded by the database
+     *
+     * @param opFilter the filter operator
      */
     @Override
     public void visit(OpFilter opFilter) {
-        // FIXME: Visit and evaluate expression?
         log.debug("Visiting OpFilter Expr size: {}", opFilter.getExprs().size());
-        opFilter
-                .getExprs()
-                .forEach(expr -> log.debug("Expr: {}", expr.toString()));
-        log.debug("-----------------");
+        SQLQuery sqlQuery = sqlQueries.pop();
+        String alias = nextAlias();
+        SPARQLtoSQLExprTranslator exprTranslator = new SPARQLtoSQLExprTranslator(alias, sqlQuery.getVars(), this::nextAlias);
+        List<String> conditions = opFilter.getExprs()
+                .getList()
+                .stream()
+                .map(exprTranslator::translateCondition)
+                .toList();
+
+        sqlQueries.push(new SQLQuery(
+                "SELECT " + alias + ".* FROM (" + sqlQuery.getSql() + ") " + alias +
+                        exprTranslator.getJoins() +
+                        " WHERE " + String.join(" AND ", conditions) +
+                        orderByRank(sqlQuery, alias),
+                sqlQuery.getVars(),
+                sqlQuery.getNullableVars(),
+                params(sqlQuery, exprTranslator),
+                sqlQuery.isOrdered()
+        ));
     }
 
     /**
-     * gets the validity String from graph name
+     * Translates the property path of a named graph: every step of the path stays inside the graph
      *
      * @param opGraph the Graph Operator
      */
     @Override
     public void visit(OpGraph opGraph) {
-        String nodeString = opGraph.getNode().toString();
-        log.debug("Visiting OpGraph: {}", nodeString);
+        log.debug("Visiting OpGraph: {}", opGraph.getNode());
 
-        if (nodeString.contains(VALIDITY_PATTERN) || nodeString.contains(VERSION_PATTERN)) {
-            log.debug("V: {}", getAnchorValueFromURI(nodeString));
+        // the algebra is translated in quad form, the graph nodes are inside the quads but the paths
+        if (!(opGraph.getSubOp() instanceof OpPath opPath)) {
+            throw unsupported(opGraph);
         }
 
-        log.debug("-----------------");
+        sqlQueries.pop();
+        sqlQueries.push(new SPARQLtoSQLPathTranslator(opGraph.getNode(), graphTranslator, this::nextAlias)
+                .translate(opPath.getTriplePath()));
     }
 
     /**
@@ -143,8 +218,7 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpService opService) {
-        log.debug("Visiting OpService");
-        log.debug("-----------------");
+        throw unsupported(opService);
     }
 
     /**
@@ -152,8 +226,7 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpDatasetNames dsNames) {
-        log.debug("Visiting OpDatasetNames");
-        log.debug("-----------------");
+        throw unsupported(dsNames);
     }
 
     /**
@@ -162,57 +235,96 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
     @Override
     public void visit(OpLabel opLabel) {
         log.debug("Visiting OpLabel");
-        log.debug("-----------------");
+
+        if (!opLabel.hasSubOp()) {
+            throw unsupported(opLabel);
+        }
     }
 
     /**
-     * @param opAssign
+     * @param opAssign The assign operator (LET)
      */
     @Override
     public void visit(OpAssign opAssign) {
-        log.debug("Visiting OpAssign");
-        log.debug("-----------------");
+        log.debug("Visiting OpAssign size: {}", opAssign.getVarExprList().size());
+        extend(opAssign.getVarExprList());
     }
 
     /**
-     * @param opExtend
+     * Adds a column computed from the expression for each variable (BIND, SELECT expressions)
+     *
+     * @param opExtend The extend operator
      */
     @Override
     public void visit(OpExtend opExtend) {
-        log.debug("Visiting OpExtend");
-        log.debug("-----------------");
+        log.debug("Visiting OpExtend size: {}", opExtend.getVarExprList().size());
+        extend(opExtend.getVarExprList());
     }
 
     /**
-     * @param opJoin
+     * Joins the left and right patterns on their common variables
+     *
+     * @param opJoin the join operator
      */
     @Override
     public void visit(OpJoin opJoin) {
-        // FIXME: Visit and evaluate expression?
         log.debug("Visiting OpJoin");
-        log.debug("opJoin Left: {}", opJoin.getLeft().toString());
-        log.debug(opJoin.getLeft().getName());
-        log.debug("opJoin Right: {}", opJoin.getRight().toString());
-        log.debug(opJoin.getRight().getName());
-        log.debug("-----------------");
+        SQLQuery right = sqlQueries.pop();
+        SQLQuery left = sqlQueries.pop();
+        sqlQueries.push(join(left, right));
     }
 
     /**
-     * @param opLeftJoin
+     * Translates the OPTIONAL pattern into a SQL <code>LEFT JOIN</code>
+     *
+     * @param opLeftJoin the left join operator
      */
     @Override
     public void visit(OpLeftJoin opLeftJoin) {
         log.debug("Visiting OpLeftJoin");
-        log.debug("-----------------");
+        SQLQuery right = sqlQueries.pop();
+        SQLQuery left = sqlQueries.pop();
+        List<Expr> exprs = opLeftJoin.getExprs() == null ? List.of() : opLeftJoin.getExprs().getList();
+        sqlQueries.push(join(left, right, true, exprs));
     }
 
     /**
-     * @param opUnion
+     * Translates the UNION pattern into a SQL <code>UNION ALL</code>: the variables missing on one side are unbound
+     *
+     * @param opUnion the union operator
      */
     @Override
     public void visit(OpUnion opUnion) {
         log.debug("Visiting OpUnion");
-        log.debug("-----------------");
+        SQLQuery right = sqlQueries.pop();
+        SQLQuery left = sqlQueries.pop();
+        Map<String, SQLVarType> vars = new LinkedHashMap<>(left.getVars());
+        Set<String> nullableVars = new LinkedHashSet<>(left.getNullableVars());
+        nullableVars.addAll(right.getNullableVars());
+
+        right.getVars().forEach((var, type) -> {
+            if (vars.containsKey(var)) {
+                checkType(var, vars.get(var), type);
+            } else {
+                vars.put(var, type);
+            }
+        });
+        vars.keySet().forEach(var -> {
+            if (!left.getVars().containsKey(var) || !right.getVars().containsKey(var)) {
+                nullableVars.add(var);
+            }
+        });
+
+        List<SQLParameter> params = new ArrayList<>(left.getParams());
+        params.addAll(right.getParams());
+
+        sqlQueries.push(new SQLQuery(
+                unionSelect(left, vars, nextAlias()) + " UNION ALL " + unionSelect(right, vars, nextAlias()),
+                vars,
+                nullableVars,
+                params,
+                false
+        ));
     }
 
     /**
@@ -220,17 +332,58 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpDiff opDiff) {
-        log.debug("Visiting OpDiff");
-        log.debug("-----------------");
+        throw unsupported(opDiff);
     }
 
     /**
-     * @param opMinus
+     * Translates the MINUS pattern into a SQL <code>NOT EXISTS</code>: a left solution is removed when a compatible
+     * right solution shares at least one bound variable with it
+     *
+     * @param opMinus the minus operator
      */
     @Override
     public void visit(OpMinus opMinus) {
         log.debug("Visiting OpMinus");
-        log.debug("-----------------");
+        SQLQuery right = sqlQueries.pop();
+        SQLQuery left = sqlQueries.pop();
+        String leftAlias = nextAlias();
+        String rightAlias = nextAlias();
+        List<String> sharedVars = right.getVars()
+                .keySet()
+                .stream()
+                .filter(left.getVars()::containsKey)
+                .toList();
+
+        if (sharedVars.isEmpty()) {
+            // disjoint domains: nothing is removed
+            sqlQueries.push(left);
+            return;
+        }
+
+        sharedVars.forEach(var -> checkType(var, left.getVars().get(var), right.getVars().get(var)));
+        List<String> conditions = new ArrayList<>(compatibility(left, right, leftAlias, rightAlias));
+        boolean alwaysShared = sharedVars.stream()
+                .anyMatch(var -> !left.getNullableVars().contains(var) && !right.getNullableVars().contains(var));
+
+        if (!alwaysShared) {
+            conditions.add("(" + sharedVars.stream()
+                    .map(var -> "(" + leftAlias + "." + column(var) + " IS NOT NULL AND " + rightAlias + "." + column(var) + " IS NOT NULL)")
+                    .collect(Collectors.joining(" OR ")) + ")");
+        }
+
+        List<SQLParameter> params = new ArrayList<>(left.getParams());
+        params.addAll(right.getParams());
+
+        sqlQueries.push(new SQLQuery(
+                "SELECT " + leftAlias + ".* FROM (" + left.getSql() + ") " + leftAlias +
+                        " WHERE NOT EXISTS (SELECT 1 FROM (" + right.getSql() + ") " + rightAlias +
+                        " WHERE " + String.join(" AND ", conditions) + ")" +
+                        orderByRank(left, leftAlias),
+                left.getVars(),
+                left.getNullableVars(),
+                params,
+                left.isOrdered()
+        ));
     }
 
     /**
@@ -238,8 +391,7 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpLateral opLateral) {
-        log.debug("Visiting OpLateral");
-        log.debug("-----------------");
+        throw unsupported(opLateral);
     }
 
     /**
@@ -247,17 +399,30 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpConditional opCondition) {
-        log.debug("Visiting OpConditional");
-        log.debug("-----------------");
+        throw unsupported(opCondition);
     }
 
     /**
-     * @param opSequence
+     * Joins the patterns of the sequence on their common variables
+     *
+     * @param opSequence the sequence operator
      */
     @Override
     public void visit(OpSequence opSequence) {
-        log.debug("Visiting OpSequence");
-        log.debug("-----------------");
+        log.debug("Visiting OpSequence size: {}", opSequence.size());
+        LinkedList<SQLQuery> elements = new LinkedList<>();
+
+        for (int i = 0; i < opSequence.size(); i++) {
+            elements.addFirst(sqlQueries.pop());
+        }
+
+        SQLQuery sqlQuery = elements.isEmpty() ? translateQuads(List.of()) : elements.removeFirst();
+
+        for (SQLQuery element : elements) {
+            sqlQuery = join(sqlQuery, element);
+        }
+
+        sqlQueries.push(sqlQuery);
     }
 
     /**
@@ -265,8 +430,7 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
      */
     @Override
     public void visit(OpDisjunction opDisjunction) {
-        log.debug("Visiting OpDisjunction");
-        log.debug("-----------------");
+        throw unsupported(opDisjunction);
     }
 
     /**
@@ -275,96 +439,658 @@ public class SPARQLtoSQLVisitor implements OpVisitor {
     @Override
     public void visit(OpList opList) {
         log.debug("Visiting OpList");
-        log.debug("-----------------");
     }
 
     /**
-     * @param opOrder
+     * Sorts the solutions with a SQL <code>ORDER BY</code>
+     *
+     * @param opOrder The order operator
      */
     @Override
     public void visit(OpOrder opOrder) {
-        log.debug("Visiting OpOrder");
-        log.debug("-----------------");
+        log.debug("Visiting OpOrder size: {}", opOrder.getConditions().size());
+        sqlQueries.push(order(sqlQueries.pop(), opOrder.getConditions(), ""));
     }
 
     /**
-     * gets the variable list from the SELECT statement
+     * keeps the variable list from the SELECT statement (in order)
      *
      * @param opProject The project operator
      */
     @Override
     public void visit(OpProject opProject) {
         log.debug("Visiting OpProject size: {}", opProject.getVars().size());
-        opProject
-                .getVars()
-                .forEach(var -> log.debug("Var: {}", var.getVarName()));
-        log.debug("-----------------");
+        SQLQuery sqlQuery = sqlQueries.pop();
+        String alias = nextAlias();
+        Map<String, SQLVarType> vars = new LinkedHashMap<>();
+        Set<String> nullableVars = new LinkedHashSet<>();
+        List<String> select = new ArrayList<>();
+
+        for (Var var : opProject.getVars()) {
+            String name = var.getVarName();
+            SQLVarType type = sqlQuery.getVars().get(name);
+
+            if (type == null) {
+                // never bound
+                vars.put(name, SQLVarType.TERM);
+                nullableVars.add(name);
+                select.add("NULL::integer AS " + column(name));
+            } else {
+                vars.put(name, type);
+                if (sqlQuery.getNullableVars().contains(name)) {
+                    nullableVars.add(name);
+                }
+                select.add(alias + "." + column(name));
+            }
+        }
+
+        if (sqlQuery.isOrdered()) {
+            select.add(alias + "." + RANK);
+        }
+
+        sqlQueries.push(new SQLQuery(
+                "SELECT " + String.join(", ", select) + " FROM (" + sqlQuery.getSql() + ") " + alias +
+                        orderByRank(sqlQuery, alias),
+                vars,
+                nullableVars,
+                sqlQuery.getParams(),
+                sqlQuery.isOrdered()
+        ));
     }
 
     /**
-     * @param opReduced
+     * @param opReduced The reduced operator (the duplicates are removed)
      */
     @Override
     public void visit(OpReduced opReduced) {
         log.debug("Visiting OpReduced");
-        log.debug("-----------------");
+        sqlQueries.push(distinct(sqlQueries.pop()));
     }
 
     /**
-     * @param opDistinct
+     * @param opDistinct The distinct operator
      */
     @Override
     public void visit(OpDistinct opDistinct) {
         log.debug("Visiting OpDistinct");
-        log.debug("-----------------");
+        sqlQueries.push(distinct(sqlQueries.pop()));
     }
 
     /**
-     * @param opSlice
+     * Keeps the requested window of solutions with a SQL <code>LIMIT</code> and <code>OFFSET</code>
+     *
+     * @param opSlice The slice operator
      */
     @Override
     public void visit(OpSlice opSlice) {
-        log.debug("Visiting OpSlice");
-        log.debug("-----------------");
+        log.debug("Visiting OpSlice start: {}, length: {}", opSlice.getStart(), opSlice.getLength());
+        SQLQuery sqlQuery = sqlQueries.pop();
+        String alias = nextAlias();
+
+        sqlQueries.push(new SQLQuery(
+                "SELECT * FROM (" + sqlQuery.getSql() + ") " + alias +
+                        orderByRank(sqlQuery, alias) +
+                        slice(opSlice.getStart(), opSlice.getLength()),
+                sqlQuery.getVars(),
+                sqlQuery.getNullableVars(),
+                sqlQuery.getParams(),
+                sqlQuery.isOrdered()
+        ));
     }
 
     /**
-     * gets the aggregator and var list
+     * Groups the solutions with a SQL <code>GROUP BY</code> and computes the aggregates inside the database
      *
-     * @param opGroup the group operator
+     * @param opGroup The group operator
      */
     @Override
     public void visit(OpGroup opGroup) {
-        // FIXME: Visit and evaluate expression?
-        log.debug("Visiting OpGroup var size: {}", opGroup.getGroupVars().size());
-        opGroup
-                .getGroupVars()
-                .getVars()
-                .forEach(var -> log.debug("Var: {}", var.getVarName()));
-        log.debug("Visiting OpGroup aggregator size: {}", opGroup.getAggregators().size());
-        opGroup
-                .getAggregators()
-                .forEach(exprAggregator -> {
-                    log.debug("Aggregator: {} ", exprAggregator.getAggregator().getName());
-                    log.debug("Associated aggregator expression size: {}", exprAggregator.getAggregator().getExprList().size());
-                    exprAggregator
-                            .getAggregator()
-                            .getExprList()
-                            .forEach(expr -> log.debug("Agg {} Expression: {}", exprAggregator.getAggregator().getName(), expr.getVarName()));
-                });
-        log.debug("-----------------");
-    }
-
-    /**
-     * @param opTopN
+        log.debug("Visiting OpGroup size: {}", opGroup.getAggregators().size());
+        SQLQuery sqlQuery = sqlQueries.pop();
+        String alias = nextAlias();
+        SPARQLtoSQLExprTranslator exprTranslator = new SPARQLtoSQLExprTranslator(alias, sqlQuery.getVars(), this::nextAlias);
+        Map<String, SQLVarType> vars = new LinkedHashMap<>();
+        List<String> select = new ArrayList<>();
+        Set<String> nullableVars = new LinkedHashSet<>();
+        List<String> groupBy = new ArrayList<>();
+
+        VarExprList groupVars = opGroup.getGroupVars();
+        for (Var var : groupVars.getVars()) {
+            Expr expr = groupVars.getExpr(var);
+            SPARQLtoSQLExprTranslator.SQLValue value = exprTranslator.translateValue(expr == null ? new ExprVar(var) : expr);
+
+            vars.put(var.getVarName(), value.type());
+            if (expr != null || sqlQuery.getNullableVars().contains(var.getVarName())) {
+                nullableVars.add(var.getVarName());
+            }
+            select.add(value.sql() + " AS " + column(var.getVarName()));
+            groupBy.add(value.sql());
+        }
+
+        for (ExprAggregator exprAggregator : opGroup.getAggregators()) {
+            SPARQLtoSQLExprTranslator.SQLValue value = exprTranslator.translateAggregator(exprAggregator.getAggregator());
+
+            vars.put(exprAggregator.getVar().getVarName(), value.type());
+            nullableVars.add(exprAggregator.getVar().getVarName());
+            select.add(value.sql() + " AS " + column(exprAggregator.getVar().getVarName()));
+        }
+
+        if (select.isEmpty()) {
+            // only the group of the solutions remains
+            select.add("count(*) AS " + column(".group"));
+        }
+
+        sqlQueries.push(new SQLQuery(
+                "SELECT " + String.join(", ", select) +
+                        " FROM (" + sqlQuery.getSql() + ") " + alias +
+                        exprTranslator.getJoins() +
+                        (groupBy.isEmpty() ? "" : " GROUP BY " + String.join(", ", groupBy)),
+                vars,
+                nullableVars,
+                params(sqlQuery, exprTranslator),
+                false
+        ));
+    }
+
+    /**
+     * Sorts the solutions and keeps the first ones inside the same SQL query, so that PostgreSQL only keeps
+     * the top rows in memory while sorting (top-N heapsort)
+     *
+     * @param opTopN The top N operator
      */
     @Override
     public void visit(OpTopN opTopN) {
-        log.debug("Visiting OpTopN");
-        log.debug("-----------------");
+        log.debug("Visiting OpTopN limit: {}", opTopN.getLimit());
+        sqlQueries.push(order(sqlQueries.pop(), opTopN.getConditions(), slice(Query.NOLIMIT, opTopN.getLimit())));
+    }
+
+    /**
+     * Self-joins <code>versioned_quad</code> once per quad pattern: the constants are compared to their ids
+     * and the variables occurring several times are joined on their first occurrence.
+     * The patterns are joined in the order of {@link #orderQuads(List)}, the most selective one driving the query.
+     *
+     * @param quads The quad patterns
+     * @return The translated quad patterns
+     */
+    private SQLQuery translateQuads(List<Quad> quads) {
+        Map<String, SQLVarType> vars = new HashMap<>();
+        Map<String, String> varColumns = new HashMap<>();
+        StringBuilder from = new StringBuilder();
+        List<String> where = new ArrayList<>();
+        List<SQLParameter> params = new ArrayList<>();
+        List<SQLParameter> whereParams = new ArrayList<>();
+
+        for (Quad quad : orderQuads(quads)) {
+            String alias = nextAlias();
+            List<String> conditions = new ArrayList<>();
+            List<SQLParameter> conditionParams = new ArrayList<>();
+
+            if (quad.getGraph().isVariable()) {
+                addNode(quad.getGraph(), graphTranslator.getColumn(quad.getGraph(), alias), graphTranslator.getType(quad.getGraph()), vars, varColumns, conditions, conditionParams);
+            } else {
+                graphTranslator.getCondition(quad.getGraph(), alias, conditionParams).ifPresent(conditions::add);
+            }
+            addNode(quad.getSubject(), alias + ".id_subject", SQLVarType.TERM, vars, varColumns, conditions, conditionParams);
+            addNode(quad.getPredicate(), alias + ".id_property", SQLVarType.TERM, vars, varColumns, conditions, conditionParams);
+            addNode(quad.getObject(), alias + ".id_object", SQLVarType.TERM, vars, varColumns, conditions, conditionParams);
+
+            if (from.isEmpty()) {
+                from.append(" FROM versioned_quad ").append(alias);
+                where.addAll(conditions);
+                whereParams.addAll(conditionParams);
+            } else {
+                // explicit joins: past join_collapse_limit, PostgreSQL keeps their order
+                from.append(" JOIN versioned_quad ").append(alias)
+                        .append(" ON ").append(conditions.isEmpty() ? "true" : String.join(" AND ", conditions));
+                params.addAll(conditionParams);
+            }
+        }
+        params.addAll(whereParams);
+
+        // the variables keep the order of the query
+        Map<String, SQLVarType> orderedVars = new LinkedHashMap<>();
+        quads.stream()
+                .flatMap(quad -> Stream.of(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject()))
+                .filter(Node::isVariable)
+                .forEach(node -> orderedVars.putIfAbsent(node.getName(), vars.get(node.getName())));
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(String.join(", ", orderedVars.keySet().stream().map(var -> varColumns.get(var) + " AS " + column(var)).toList()));
+        sql.append(from);
+
+        if (!where.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", where));
+        }
+
+        return new SQLQuery(sql.toString(), orderedVars, params);
+    }
+
+    /**
+     * Orders the quad patterns greedily: the next pattern is the one matching the fewest quads,
+     * among the patterns sharing a variable with the previous ones (to avoid the cartesian products).
+     * Without statistics, the patterns keep their order.
+     *
+     * @param quads The quad patterns
+     * @return The quad patterns in join order
+     */
+    private List<Quad> orderQuads(List<Quad> quads) {
+        if (statistics.isEmpty() || quads.size() < 2) {
+            return quads;
+        }
+
+        List<Quad> remaining = new ArrayList<>(quads);
+        List<Quad> ordered = new ArrayList<>();
+        Set<Node> bound = new HashSet<>();
+
+        while (!remaining.isEmpty()) {
+            Quad next = remaining.stream()
+                    .min(Comparator.comparingInt((Quad quad) -> ordered.isEmpty() || isConnected(quad, bound) ? 0 : 1)
+                            .thenComparingDouble(quad -> estimate(quad, bound)))
+                    .orElseThrow();
+
+            remaining.remove(next);
+            ordered.add(next);
+            Stream.of(next.getGraph(), next.getSubject(), next.getPredicate(), next.getObject())
+                    .filter(Node::isVariable)
+                    .forEach(bound::add);
+        }
+
+        log.debug("Join order: {}", ordered);
+        return ordered;
+    }
+
+    /**
+     * Estimates the number of quads matching the pattern once the <code>bound</code> variables are known,
+     * assuming the subjects and the objects of a property are uniformly distributed
+     *
+     * @param quad  The quad pattern
+     * @param bound The variables bound by the previous patterns
+     * @return The estimated number of quads
+     */
+    private double estimate(Quad quad, Set<Node> bound) {
+        if (!quad.getPredicate().isURI()) {
+            return statistics.getQuadCount();
+        }
+
+        String namedGraph = SPARQLtoSQLGraphTranslator.getNamedGraph(quad.getGraph()).orElse(null);
+
+        return statistics.getCardinality(quad.getPredicate().getURI(), namedGraph)
+                .map(cardinality -> {
+                    double estimate = cardinality.quadCount();
+
+                    if (isBound(quad.getSubject(), bound)) {
+                        estimate /= Math.max(1, cardinality.distinctSubjects());
+                    }
+                    if (isBound(quad.getObject(), bound)) {
+                        estimate /= Math.max(1, cardinality.distinctObjects());
+                    }
+
+                    return estimate;
+                })
+                .orElse(0.0);
+    }
+
+    /**
+     * @param node  The quad pattern node
+     * @param bound The variables bound by the previous patterns
+     * @return <code>true</code> if the node is a constant or a bound variable
+     */
+    private static boolean isBound(Node node, Set<Node> bound) {
+        return node.isConcrete() || bound.contains(node);
+    }
+
+    /**
+     * @param quad  The quad pattern
+     * @param bound The variables bound by the previous patterns
+     * @return <code>true</code> if the pattern shares a variable with the previous patterns
+     */
+    private static boolean isConnected(Quad quad, Set<Node> bound) {
+        return Stream.of(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject())
+                .anyMatch(node -> node.isVariable() && bound.contains(node));
+    }
+
+    /**
+     * Adds the condition on a quad pattern node
+     *
+     * @param node       The node
+     * @param column     The id column matching the node
+     * @param type       The id domain of the column
+     * @param vars       The variables already bound
+     * @param varColumns The columns of the variables already bound
+     * @param where      The conditions
+     * @param params     The parameters of the conditions
+     */
+    private static void addNode(
+            Node node,
+            String column,
+            SQLVarType type,
+            Map<String, SQLVarType> vars,
+            Map<String, String> varColumns,
+            List<String> where,
+            List<SQLParameter> params
+    ) {
+        if (node.isVariable()) {
+            String name = node.getName();
+            SQLVarType boundType = vars.get(name);
+
+            if (boundType == null) {
+                vars.put(name, type);
+                varColumns.put(name, column);
+            } else {
+                checkType(name, boundType, type);
+                where.add(column + " = " + varColumns.get(name));
+            }
+        } else {
+            where.add(column + " = ?");
+            params.add(new SQLParameter(node, type));
+        }
+    }
+
+    /**
+     * Joins two translated patterns on their common variables
+     *
+     * @param left  The left pattern
+     * @param right The right pattern
+     * @return The translated join
+     */
+    private SQLQuery join(SQLQuery left, SQLQuery right) {
+        return join(left, right, false, List.of());
+    }
+
+    /**
+     * Joins the patterns on their shared variables. A shared variable is compatible when both sides are equal,
+     * or when one of them is unbound (the bound value is kept).
+     *
+     * @param left     The left pattern
+     * @param right    The right pattern
+     * @param optional <code>true</code> to keep the left solutions without a compatible right solution (OPTIONAL)
+     * @param exprs    The filter of the OPTIONAL, evaluated over the variables of both sides
+     * @return The translated join
+     */
+    private SQLQuery join(SQLQuery left, SQLQuery right, boolean optional, List<Expr> exprs) {
+        String leftAlias = nextAlias();
+        String rightAlias = nextAlias();
+        Map<String, SQLVarType> vars = new LinkedHashMap<>(left.getVars());
+        Set<String> nullableVars = new LinkedHashSet<>(left.getNullableVars());
+
+        right.getVars().forEach((var, type) -> {
+            if (vars.containsKey(var)) {
+                checkType(var, vars.get(var), type);
+                if (!right.getNullableVars().contains(var) && !optional) {
+                    nullableVars.remove(var);
+                }
+            } else {
+                vars.put(var, type);
+                if (right.getNullableVars().contains(var) || optional) {
+                    nullableVars.add(var);
+                }
+            }
+        });
+
+        List<SQLParameter> params = new ArrayList<>(left.getParams());
+        params.addAll(right.getParams());
+        List<String> select = joinColumns(left, right, leftAlias, rightAlias)
+                .entrySet()
+                .stream()
+                .map(var -> var.getValue() + " AS " + column(var.getKey()))
+                .toList();
+        String sql = "SELECT " + String.join(", ", select) + " FROM (" + left.getSql() + ") " + leftAlias;
+
+        if (exprs.isEmpty()) {
+            List<String> on = compatibility(left, right, leftAlias, rightAlias);
+            sql += (optional ? " LEFT JOIN (" : " JOIN (") + right.getSql() + ") " + rightAlias +
+                    " ON " + (on.isEmpty() ? "TRUE" : String.join(" AND ", on));
+        } else {
+            // the filter sees the left variables: the right pattern is joined laterally
+            String filteredAlias = nextAlias();
+            SPARQLtoSQLExprTranslator exprTranslator = new SPARQLtoSQLExprTranslator(
+                    joinColumns(left, right, leftAlias, filteredAlias),
+                    vars,
+                    this::nextAlias
+            );
+            List<String> conditions = new ArrayList<>(compatibility(left, right, leftAlias, filteredAlias));
+            exprs.forEach(expr -> conditions.add(exprTranslator.translateCondition(expr)));
+            params.addAll(exprTranslator.getParams());
+
+            sql += (optional ? " LEFT JOIN LATERAL (" : " JOIN LATERAL (") +
+                    "SELECT " + filteredAlias + ".* FROM (" + right.getSql() + ") " + filteredAlias +
+                    exprTranslator.getJoins() +
+                    " WHERE " + String.join(" AND ", conditions) +
+                    ") " + rightAlias + " ON TRUE";
+        }
+
+        return new SQLQuery(sql, vars, nullableVars, params, false);
+    }
+
+    /**
+     * @param sqlQuery       The translated pattern
+     * @param exprTranslator The translator of the expressions over the pattern
+     * @return The parameters of the pattern, then the constants of the expressions (joined after the pattern)
+     */
+    private static List<SQLParameter> params(SQLQuery sqlQuery, SPARQLtoSQLExprTranslator exprTranslator) {
+        List<SQLParameter> params = new ArrayList<>(sqlQuery.getParams());
+        params.addAll(exprTranslator.getParams());
+
+        return params;
+    }
+
+    /**
+     * @return The conditions of compatibility of the shared variables
+     */
+    private static List<String> compatibility(SQLQuery left, SQLQuery right, String leftAlias, String rightAlias) {
+        List<String> conditions = new ArrayList<>();
+
+        right.getVars().keySet().forEach(var -> {
+            if (left.getVars().containsKey(var)) {
+                String leftColumn = leftAlias + "." + column(var);
+                String rightColumn = rightAlias + "." + column(var);
+                List<String> compatible = new ArrayList<>();
+
+                if (left.getNullableVars().contains(var)) {
+                    compatible.add(leftColumn + " IS NULL");
+                }
+                if (right.getNullableVars().contains(var)) {
+                    compatible.add(rightColumn + " IS NULL");
+                }
+                compatible.add(leftColumn + " = " + rightColumn);
+
+                conditions.add(compatible.size() == 1 ? compatible.get(0) : "(" + String.join(" OR ", compatible) + ")");
+            }
+        });
+
+        return conditions;
+    }
+
+    /**
+     * @return The SQL expression of each variable of the join (the bound side of a shared variable)
+     */
+    private static Map<String, String> joinColumns(SQLQuery left, SQLQuery right, String leftAlias, String rightAlias) {
+        Map<String, String> columns = new LinkedHashMap<>();
+
+        left.getVars().keySet().forEach(var -> columns.put(
+                var,
+                right.getVars().containsKey(var) && left.getNullableVars().contains(var)
+                        ? "coalesce(" + leftAlias + "." + column(var) + ", " + rightAlias + "." + column(var) + ")"
+                        : leftAlias + "." + column(var)
+        ));
+        right.getVars().keySet().forEach(var -> columns.putIfAbsent(var, rightAlias + "." + column(var)));
+
+        return columns;
+    }
+
+    /**
+     * Adds the computed columns one after the other (an expression can use the previous variables)
+     *
+     * @param varExprList The computed variables
+     */
+    private void extend(VarExprList varExprList) {
+        for (Var var : varExprList.getVars()) {
+            SQLQuery sqlQuery = sqlQueries.pop();
+            String name = var.getVarName();
+
+            if (sqlQuery.getVars().containsKey(name)) {
+                throw new SPARQLTranslationException("The variable ?" + name + " is already bound");
+            }
+
+            String alias = nextAlias();
+            SPARQLtoSQLExprTranslator exprTranslator = new SPARQLtoSQLExprTranslator(alias, sqlQuery.getVars(), this::nextAlias);
+            SPARQLtoSQLExprTranslator.SQLValue value = exprTranslator.translateValue(varExprList.getExpr(var));
+            Map<String, SQLVarType> vars = new LinkedHashMap<>(sqlQuery.getVars());
+            vars.put(name, value.type());
+            // an error of the expression leaves the variable unbound
+            Set<String> nullableVars = new LinkedHashSet<>(sqlQuery.getNullableVars());
+            nullableVars.add(name);
+
+            sqlQueries.push(new SQLQuery(
+                    "SELECT " + alias + ".*, " + value.sql() + " AS " + column(name) +
+                            " FROM (" + sqlQuery.getSql() + ") " + alias +
+                            exprTranslator.getJoins() +
+                            orderByRank(sqlQuery, alias),
+                    vars,
+                    nullableVars,
+                    params(sqlQuery, exprTranslator),
+                    sqlQuery.isOrdered()
+            ));
+        }
+    }
+
+    /**
+     * Ranks the solutions in the order of the conditions (the <code>RANK</code> column), so the operators above
+     * keep this order. The window and the <code>ORDER BY</code> share the same sort.
+     *
+     * @param sqlQuery   The translated pattern
+     * @param conditions The sort conditions
+     * @param slice      The <code>LIMIT</code> and <code>OFFSET</code> clauses of the sorted solutions
+     * @return The translated pattern sorted by the conditions
+     */
+    private SQLQuery order(SQLQuery sqlQuery, List<SortCondition> conditions, String slice) {
+        String alias = nextAlias();
+        SPARQLtoSQLExprTranslator exprTranslator = new SPARQLtoSQLExprTranslator(alias, sqlQuery.getVars(), this::nextAlias);
+        String keys = conditions.stream()
+                .flatMap(condition -> exprTranslator.translateOrderKeys(
+                        condition.getExpression(),
+                        condition.getDirection() != Query.ORDER_DESCENDING
+                ).stream())
+                .collect(Collectors.joining(", "));
+        // the previous rank, if any, is replaced
+        List<String> select = new ArrayList<>(sqlQuery.getVars().keySet().stream().map(var -> alias + "." + column(var)).toList());
+        select.add("row_number() OVER (ORDER BY " + keys + ") AS " + RANK);
+
+        return new SQLQuery(
+                "SELECT " + String.join(", ", select) + " FROM (" + sqlQuery.getSql() + ") " + alias +
+                        exprTranslator.getJoins() +
+                        " ORDER BY " + keys +
+                        slice,
+                sqlQuery.getVars(),
+                sqlQuery.getNullableVars(),
+                params(sqlQuery, exprTranslator),
+                true
+        );
+    }
+
+    /**
+     * @param start  The number of skipped solutions (<code>Query.NOLIMIT</code> if none)
+     * @param length The maximum number of solutions (<code>Query.NOLIMIT</code> if none)
+     * @return The <code>LIMIT</code> and <code>OFFSET</code> clauses
+     */
+    private static String slice(long start, long length) {
+        return (length == Query.NOLIMIT ? "" : " LIMIT " + length) +
+                (start == Query.NOLIMIT || start <= 0 ? "" : " OFFSET " + start);
+    }
+
+    /**
+     * Removes the duplicates. The first occurrence of each solution keeps its rank when the pattern is ordered.
+     *
+     * @param sqlQuery The translated pattern
+     * @return The translated pattern without duplicates
+     */
+    private SQLQuery distinct(SQLQuery sqlQuery) {
+        String alias = nextAlias();
+
+        if (!sqlQuery.isOrdered()) {
+            return new SQLQuery(
+                    "SELECT DISTINCT * FROM (" + sqlQuery.getSql() + ") " + alias,
+                    sqlQuery.getVars(),
+                    sqlQuery.getNullableVars(),
+                    sqlQuery.getParams(),
+                    false
+            );
+        }
+        if (sqlQuery.getVars().isEmpty()) {
+            // all the solutions are the same
+            return new SQLQuery(
+                    "SELECT * FROM (" + sqlQuery.getSql() + ") " + alias + orderByRank(sqlQuery, alias) + " LIMIT 1",
+                    sqlQuery.getVars(),
+                    sqlQuery.getNullableVars(),
+                    sqlQuery.getParams(),
+                    true
+            );
+        }
+
+        String columns = sqlQuery.getVars()
+                .keySet()
+                .stream()
+                .map(var -> alias + "." + column(var))
+                .collect(Collectors.joining(", "));
+
+        return new SQLQuery(
+                "SELECT " + columns + ", min(" + alias + "." + RANK + ") AS " + RANK +
+                        " FROM (" + sqlQuery.getSql() + ") " + alias +
+                        " GROUP BY " + columns +
+                        " ORDER BY min(" + alias + "." + RANK + ")",
+                sqlQuery.getVars(),
+                sqlQuery.getNullableVars(),
+                sqlQuery.getParams(),
+                true
+        );
+    }
+
+    /**
+     * @param sqlQuery The translated pattern
+     * @param alias    The alias of the pattern
+     * @return The <code>ORDER BY</code> clause keeping the order of an ordered pattern, empty otherwise
+     */
+    private static String orderByRank(SQLQuery sqlQuery, String alias) {
+        return sqlQuery.isOrdered() ? " ORDER BY " + alias + "." + RANK : "";
+    }
+
+    /**
+     * @param sqlQuery The translated pattern
+     * @param vars     The variables of the union, in order
+     * @param alias    The alias of the pattern
+     * @return The columns of the union selected from the pattern (<code>NULL</code> for its missing variables)
+     */
+    private static String unionSelect(SQLQuery sqlQuery, Map<String, SQLVarType> vars, String alias) {
+        List<String> select = new ArrayList<>();
+
+        vars.forEach((var, type) -> select.add(
+                sqlQuery.getVars().containsKey(var)
+                        ? alias + "." + column(var)
+                        : switch (type) {
+                    case TERM, NAMED_GRAPH -> "NULL::integer";
+                    case VALIDITY -> "NULL::bit varying";
+                    case NUMBER -> "NULL::numeric";
+                    case STRING -> "NULL::text";
+                } + " AS " + column(var)
+        ));
+
+        return "SELECT " + String.join(", ", select) + " FROM (" + sqlQuery.getSql() + ") " + alias;
+    }
+
+    private String nextAlias() {
+        return "t" + aliasCount++;
+    }
+
+    /**
+     * Checks that the variable is always bound to ids of the same dictionary
+     */
+    private static void checkType(String var, SQLVarType type, SQLVarType otherType) {
+        if (type != otherType) {
+            throw new SPARQLTranslationException("The variable ?" + var + " can't be both a " + type + " and a " + otherType);
+        }
     }
 
-    private static String getAnchorValueFromURI(String uri) {
-        return uri.substring(uri.indexOf('#') + 1);
+    private static SPARQLTranslationException unsupported(Op op) {
+        return new SPARQLTranslationException("The " + op.getName() + " operator isn't supported");
     }
 }
@@ -0,0 +1,5 @@
+-- One-off migration from sparqltosql.validity.storage=interval to sparqltosql.validity.storage=bitstring.
+-- Each storage only writes its own column: run this script once, with the application stopped, before restarting it
+-- with the bit string storage.
+UPDATE versioned_quad SET validity = ranges_to_validity(validity_ranges, (SELECT count(*)::integer FROM commit)), validity_ranges = NULL
+    WHERE validity_ranges IS NOT NULL;
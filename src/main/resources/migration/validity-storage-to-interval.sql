@@ -0,0 +1,5 @@
+-- One-off migration from sparqltosql.validity.storage=bitstring to sparqltosql.validity.storage=interval.
+-- Each storage only writes its own column: run this script once, with the application stopped, before restarting it
+-- with the interval storage.
+UPDATE versioned_quad SET validity_ranges = validity_to_ranges(validity), validity = NULL
+    WHERE validity IS NOT NULL;
@@ -20,15 +20,88 @@ CREATE TABLE IF NOT EXISTS versioned_quad
     id_subject     integer,
     id_named_graph integer,
     validity       bit varying,
+    validity_ranges int4multirange,
     PRIMARY KEY (id_object, id_property, id_subject, id_named_graph),
     CONSTRAINT fk_named_graph
         FOREIGN KEY (id_named_graph)
             REFERENCES named_graph (id_named_graph)
 );
 
+ALTER TABLE versioned_quad ADD COLUMN IF NOT EXISTS validity_ranges int4multirange;
+
+-- The primary key serves the patterns with a bound object, these ones the patterns with a bound subject or property
+CREATE INDEX IF NOT EXISTS versioned_quad_subject_idx ON versioned_quad (id_subject, id_property, id_object);
+
+CREATE INDEX IF NOT EXISTS versioned_quad_property_idx ON versioned_quad (id_property, id_subject);
+
+CREATE INDEX IF NOT EXISTS versioned_quad_validity_ranges_idx ON versioned_quad USING gist (validity_ranges);
+
+-- The versions where a bit string validity is valid (the trailing bits are equal to the last bit)
+CREATE OR REPLACE FUNCTION validity_to_ranges(validity bit varying) RETURNS int4multirange
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE
+AS $$
+SELECT coalesce(
+    range_agg(int4range(i, CASE WHEN i = bit_length(validity) - 1 THEN NULL ELSE i + 1 END)),
+    '{}'::int4multirange
+)
+    FROM generate_series(0, bit_length(validity) - 1) i
+    WHERE get_bit(validity, i) = 1
+$$;
+
+-- The bit string of the versions, from 0 to length - 1, where the ranges are valid: it is built from the set of the
+-- ranges (one run of 0 and one run of 1 by range), whatever the number of versions
+CREATE OR REPLACE FUNCTION ranges_to_validity(validity_ranges int4multirange, length integer) RETURNS bit varying
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE
+AS $$
+SELECT (coalesce(string_agg(repeat('0', lower(r.range) - r.previous_upper) || repeat('1', r.upper - lower(r.range)), '' ORDER BY r.range), '')
+        || repeat('0', length - coalesce(max(r.upper), 0)))::bit varying
+    FROM (
+        SELECT range, least(coalesce(upper(range), length), length) AS upper,
+            coalesce(lag(upper(range)) OVER (ORDER BY range), 0) AS previous_upper
+            FROM unnest(validity_ranges) range
+            WHERE lower(range) < length
+    ) r
+$$;
+
+-- The timestamp of the xsd:dateTime or xsd:date lexical form, NULL when PostgreSQL can't read it (e.g. a negative year)
+-- (the body is quoted: the script is split on the semicolons)
+CREATE OR REPLACE FUNCTION try_cast_timestamptz(value text) RETURNS timestamptz
+    LANGUAGE plpgsql STABLE STRICT PARALLEL SAFE
+AS '
+BEGIN
+    RETURN CAST(value AS timestamptz);
+EXCEPTION
+    WHEN data_exception THEN RETURN NULL;
+END
+';
+
+CREATE INDEX IF NOT EXISTS versioned_quad_validity_idx ON versioned_quad USING gist (validity_to_ranges(validity));
+
 CREATE TABLE IF NOT EXISTS commit
 (
     id_commit integer PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     message   varchar(255),
     date_commit timestamptz default current_timestamp
-)
\ No newline at end of file
+);
+
+CREATE UNLOGGED TABLE IF NOT EXISTS versioned_quad_staging
+(
+    id_commit   integer,
+    is_add      boolean,
+    subject     text,
+    property    text,
+    object      text,
+    object_type varchar(255),
+    named_graph varchar(255)
+);
+
+CREATE INDEX IF NOT EXISTS versioned_quad_staging_idx ON versioned_quad_staging (id_commit);
+-- The cardinalities by property and named graph (all the named graphs when id_named_graph is NULL), refreshed after each import
+CREATE TABLE IF NOT EXISTS property_statistics
+(
+    id_property       integer,
+    id_named_graph    integer,
+    quad_count        bigint,
+    distinct_subjects bigint,
+    distinct_objects  bigint
+);
@@ -0,0 +1,10 @@
+package fr.vcity.sparqltosql;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the same scenario with the validities stored as version ranges
+ */
+@TestPropertySource(properties = "sparqltosql.validity.storage=interval")
+class IntervalValiditySparqlToSqlApplicationTests extends SparqlToSqlApplicationTests {
+}
@@ -1,36 +1,72 @@
 package fr.vcity.sparqltosql;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.vcity.sparqltosql.dto.RDFCompleteVersionedQuad;
+import fr.vcity.sparqltosql.exceptions.QueryCancelledException;
+import fr.vcity.sparqltosql.exceptions.QueryRejectedException;
+import fr.vcity.sparqltosql.model.QueryExecution;
+import fr.vcity.sparqltosql.model.RDFStatistics;
+import fr.vcity.sparqltosql.repository.IRDFValidityStorage;
+import fr.vcity.sparqltosql.repository.RDFIntervalValidityStorage;
+import fr.vcity.sparqltosql.repository.RDFQueryExecutionComponent;
+import fr.vcity.sparqltosql.repository.RDFStatisticsComponent;
+import fr.vcity.sparqltosql.repository.RDFVersionedQuadComponent;
 import fr.vcity.sparqltosql.services.IQuadImportService;
 import fr.vcity.sparqltosql.services.IQuadQueryService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.ResultSetMgr;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.resultset.ResultSetLang;
 import org.apache.jena.riot.system.ErrorHandlerFactory;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @Slf4j
@@ -51,11 +87,32 @@ class SparqlToSqlApplicationTests {
     @Autowired
     private IQuadQueryService quadQueryService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RDFStatisticsComponent rdfStatisticsComponent;
+
+    @Autowired
+    private RDFQueryExecutionComponent rdfQueryExecutionComponent;
+
+    @Autowired
+    private RDFVersionedQuadComponent rdfVersionedQuadComponent;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IRDFValidityStorage validityStorage;
+
+    @Value("${sparqltosql.query.max-concurrent}")
+    private int maxConcurrent;
+
     @Test
     @Order(0)
     public void resetDatabase() {
         quadImportService.resetDatabase();
-        List<RDFCompleteVersionedQuad> quads = quadQueryService.queryRequestedValidity("*");
+        List<RDFCompleteVersionedQuad> quads = queryRequestedValidity("*");
 
         if (quads.size() > 0) {
             throw new RuntimeException("The result should be empty, current size: " + quads.size());
@@ -79,7 +136,7 @@ class SparqlToSqlApplicationTests {
                         .file(file))
                 .andExpect(status().isOk());
 
-        List<RDFCompleteVersionedQuad> quads = quadQueryService.queryRequestedValidity("*");
+        List<RDFCompleteVersionedQuad> quads = queryRequestedValidity("*");
 
         for (RDFCompleteVersionedQuad quad : quads) {
             assertEquals("1", new String(quad.getValidity(), StandardCharsets.UTF_8));
@@ -103,7 +160,7 @@ class SparqlToSqlApplicationTests {
                         .file(file))
                 .andExpect(status().isOk());
 
-        List<RDFCompleteVersionedQuad> quads = quadQueryService.queryRequestedValidity("*");
+        List<RDFCompleteVersionedQuad> quads = queryRequestedValidity("*");
 
         Dataset dataset =
                 RDFParser.create()
@@ -156,7 +213,7 @@ class SparqlToSqlApplicationTests {
                         .file(file2))
                 .andExpect(status().isOk());
 
-        List<RDFCompleteVersionedQuad> quads = quadQueryService.queryRequestedValidity("*");
+        List<RDFCompleteVersionedQuad> quads = queryRequestedValidity("*");
 
         Dataset dataset1 =
                 RDFParser.create()
@@ -209,13 +266,11 @@ class SparqlToSqlApplicationTests {
     @Order(4)
     public void queryAllVersion() throws Exception {
         String validity = "*";
-        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/validity/" + validity))
-                .andExpect(status().isOk())
-                .andReturn();
+        MvcResult mvcResult = performStreaming(MockMvcRequestBuilders.get("http://localhost:8080/query/validity/" + validity));
 
         List<RDFCompleteVersionedQuad> resultQuads = List.of(new ObjectMapper().readValue(mvcResult.getResponse().getContentAsString(), RDFCompleteVersionedQuad[].class));
 
-        List<RDFCompleteVersionedQuad> quads = quadQueryService.queryRequestedValidity(validity);
+        List<RDFCompleteVersionedQuad> quads = queryRequestedValidity(validity);
 
         for (int index = 0; index < quads.size(); index++) {
             assertEquals(resultQuads.get(index).getS(), quads.get(index).getS());
@@ -230,13 +285,11 @@ class SparqlToSqlApplicationTests {
     @Order(5)
     public void queryValidity() throws Exception {
         String validity = "101";
-        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/validity/" + validity))
-                .andExpect(status().isOk())
-                .andReturn();
+        MvcResult mvcResult = performStreaming(MockMvcRequestBuilders.get("http://localhost:8080/query/validity/" + validity));
 
         List<RDFCompleteVersionedQuad> resultQuads = List.of(new ObjectMapper().readValue(mvcResult.getResponse().getContentAsString(), RDFCompleteVersionedQuad[].class));
 
-        List<RDFCompleteVersionedQuad> quads = quadQueryService.queryRequestedValidity(validity);
+        List<RDFCompleteVersionedQuad> quads = queryRequestedValidity(validity);
 
         for (int index = 0; index < quads.size(); index++) {
             assertEquals(resultQuads.get(index).getS(), quads.get(index).getS());
@@ -251,9 +304,7 @@ class SparqlToSqlApplicationTests {
     @Order(6)
     public void queryVersion() throws Exception {
         int index = 1;
-        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/version/" + index))
-                .andExpect(status().isOk())
-                .andReturn();
+        MvcResult mvcResult = performStreaming(MockMvcRequestBuilders.get("http://localhost:8080/query/version/" + index));
 
         List<RDFCompleteVersionedQuad> resultQuads = List.of(new ObjectMapper().readValue(mvcResult.getResponse().getContentAsString(), RDFCompleteVersionedQuad[].class));
 
@@ -266,11 +317,832 @@ class SparqlToSqlApplicationTests {
     @Order(7)
     public void querySPARQL() throws Exception {
         Resource resource = resourceLoader.getResource("classpath:static/queries/sparql.rq");
-        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/query/sparql")
+        MvcResult mvcResult = performStreaming(MockMvcRequestBuilders.multipart("http://localhost:8080/query/sparql")
+                .contentType(MediaType.TEXT_PLAIN)
+                .content(new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8)));
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        JsonNode maximum = results.get("results").get("bindings").get(0).get("maximum");
+
+        assertEquals("maximum", results.get("head").get("vars").get(0).asText());
+        assertEquals("literal", maximum.get("type").asText());
+        assertEquals("12.056", maximum.get("value").asText());
+        assertEquals("http://shapechange.net/resources/ont/base#Measure", maximum.get("datatype").asText());
+    }
+
+    @Test
+    @Order(8)
+    public void importQuadsBulk() throws Exception {
+        List<String> expectedQuads = queryRequestedValidity("*")
+                .stream()
+                .map(SparqlToSqlApplicationTests::quadToString)
+                .sorted()
+                .toList();
+
+        quadImportService.resetDatabase();
+
+        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/import/add")
+                        .file(getMultipartFile("classpath:static/add/LYON_1ER_BATI_2015-add_bldg.nq"))
+                        .param("bulk", "true"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/import/remove")
+                        .file(getMultipartFile("classpath:static/remove/LYON_1ER_BATI_2015-remove_bldg.nq"))
+                        .param("bulk", "true"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/import/remove-add")
+                        .file(getMultipartFile("classpath:static/remove-add/LYON_1ER_BATI_2015-remove_bldg.nq"))
+                        .file(getMultipartFile("classpath:static/remove-add/LYON_1ER_BATI_2015-add_bldg.nq"))
+                        .param("bulk", "true"))
+                .andExpect(status().isOk());
+
+        List<String> quads = queryRequestedValidity("*")
+                .stream()
+                .map(SparqlToSqlApplicationTests::quadToString)
+                .sorted()
+                .toList();
+
+        assertEquals(expectedQuads, quads);
+    }
+
+    @Test
+    @Order(9)
+    public void querySPARQLBasicGraphPattern() throws Exception {
+        List<Map<String, String>> solutions = querySPARQL("""
+                SELECT ?part ?height WHERE {
+                    <https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243> <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.consistsOfBuildingPart> ?part .
+                    ?part <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height .
+                }
+                """);
+
+        assertEquals(1, solutions.size());
+        assertEquals("https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243_1", solutions.get(0).get("part"));
+        assertEquals("12.056", solutions.get(0).get("height"));
+
+        List<Map<String, String>> unknownSolutions = querySPARQL("""
+                SELECT ?s WHERE {
+                    ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> "12.056" .
+                }
+                """);
+
+        assertEquals(0, unknownSolutions.size());
+    }
+
+    @Test
+    @Order(10)
+    public void querySPARQLPlanCache() throws Exception {
+        double planHits = meterRegistry.get("cache.gets").tag("cache", "sparql_plan").tag("result", "hit").functionCounter().count();
+
+        for (String building : List.of("BU_69381AB243", "BU_69381AB243_1")) {
+            List<Map<String, String>> solutions = querySPARQL("""
+                    SELECT ?label WHERE {
+                        <https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#%s> <http://www.w3.org/2004/02/skos/core#prefLabel> ?label .
+                    }
+                    """.formatted(building));
+
+            assertEquals(1, solutions.size());
+            assertEquals(building, solutions.get(0).get("label"));
+        }
+
+        assertEquals(planHits + 1, meterRegistry.get("cache.gets").tag("cache", "sparql_plan").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    @Order(11)
+    public void querySPARQLFilter() throws Exception {
+        String heightQuery = """
+                SELECT ?s WHERE {
+                    ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height .
+                    FILTER(%s)
+                }
+                """;
+
+        assertEquals(1, querySPARQL(heightQuery.formatted("?height > 10 && ?height <= 12.056")).size());
+        assertEquals(0, querySPARQL(heightQuery.formatted("?height >= 20 || !bound(?height)")).size());
+
+        List<Map<String, String>> labels = querySPARQL("""
+                SELECT ?s WHERE {
+                    ?s <http://www.w3.org/2004/02/skos/core#prefLabel> ?label .
+                    FILTER(regex(?label, "^bu_", "i") && !contains(?label, "_1"))
+                }
+                """);
+
+        assertEquals(1, labels.size());
+        assertEquals("https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243", labels.get(0).get("s"));
+
+        assertEquals(1, querySPARQL("""
+                SELECT ?s WHERE {
+                    ?s <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> ?type .
+                    FILTER(?type = <http://www.opengis.net/citygml/building/2.0/building#BuildingPart>)
+                }
+                """).size());
+
+        // An IRI missing from the dictionary is still a term, different from all the others
+        String typeQuery = """
+                SELECT ?s WHERE {
+                    ?s <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> ?type .
+                    FILTER(%s)
+                }
+                """;
+        int typeCount = querySPARQL(typeQuery.formatted("true")).size();
+
+        assertTrue(typeCount > 0);
+        assertEquals(typeCount, querySPARQL(typeQuery.formatted("?type != <http://example.org/unknown>")).size());
+        assertEquals(0, querySPARQL(typeQuery.formatted("?type = <http://example.org/unknown>")).size());
+        assertEquals(1, querySPARQL("""
+                SELECT ?s WHERE {
+                    ?s <http://www.opengis.net/citygml/2.0/core#AbstractCityObject.creationDate> ?date .
+                    FILTER(?date > "2017-01-01"^^<http://www.w3.org/2001/XMLSchema#date>)
+                }
+                """).size());
+
+        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/import/add")
+                        .file(getMultipartFile("classpath:static/add/heights.nq")))
+                .andExpect(status().isOk());
+
+        // Both variables are numeric: compared as numbers, not by lexical form ("10" < "9.5")
+        assertEquals(List.of(Map.of("s", "http://example.org/building/1")), querySPARQL("""
+                SELECT ?s WHERE {
+                    ?s <http://example.org/height> ?height .
+                    <http://example.org/building/2> <http://example.org/height> ?other .
+                    FILTER(?height > ?other)
+                }
+                """));
+    }
+
+    @Test
+    @Order(12)
+    public void querySPARQLAggregates() throws Exception {
+        Resource resource = resourceLoader.getResource("classpath:static/queries/sparql.rq");
+        List<Map<String, String>> maximum = querySPARQL(new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+
+        assertEquals(List.of(Map.of("maximum", "12.056")), maximum);
+
+        List<Map<String, String>> parts = querySPARQL("""
+                SELECT ?building (COUNT(DISTINCT ?part) AS ?count) (GROUP_CONCAT(?part; separator=",") AS ?parts) WHERE {
+                    ?building <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.consistsOfBuildingPart> ?part .
+                }
+                GROUP BY ?building
+                """);
+
+        assertEquals(1, parts.size());
+        assertEquals("https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243", parts.get(0).get("building"));
+        assertEquals("1", parts.get(0).get("count"));
+        assertEquals("https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243_1", parts.get(0).get("parts"));
+
+        assertEquals(List.of(Map.of("count", "0", "sum", "0")), querySPARQL("""
+                SELECT (COUNT(*) AS ?count) (SUM(?height) AS ?sum) WHERE {
+                    ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height .
+                    FILTER(?height > 100)
+                }
+                """));
+    }
+
+    @Test
+    @Order(13)
+    public void querySPARQLOrderAndSlice() throws Exception {
+        String labelQuery = """
+                SELECT %s ?label WHERE {
+                    ?s <http://www.w3.org/2004/02/skos/core#prefLabel> ?label .
+                }
+                %s
+                """;
+
+        List<String> labels = querySPARQL(labelQuery.formatted("", ""))
+                .stream()
+                .map(bindings -> bindings.get("label"))
+                .toList();
+        List<String> descendingLabels = querySPARQL(labelQuery.formatted("DISTINCT", "ORDER BY DESC(?label)"))
+                .stream()
+                .map(bindings -> bindings.get("label"))
+                .toList();
+
+        assertEquals(labels.stream().distinct().sorted(Comparator.reverseOrder()).toList(), descendingLabels);
+        // the order is kept by the computed variables of the projection
+        assertEquals(
+                labels.stream().sorted(Comparator.reverseOrder()).toList(),
+                querySPARQL(labelQuery.formatted("(STRLEN(?label) AS ?length)", "ORDER BY DESC(?label)"))
+                        .stream()
+                        .map(bindings -> bindings.get("label"))
+                        .toList()
+        );
+        assertEquals(
+                List.of(Map.of("label", "BU_69381AB243"), Map.of("label", "BU_69381AB243_1")),
+                querySPARQL(labelQuery.formatted("", "ORDER BY ?label LIMIT 2"))
+        );
+        assertEquals(
+                List.of(Map.of("label", "BU_69381AB243_1")),
+                querySPARQL(labelQuery.formatted("", "ORDER BY ?label LIMIT 1 OFFSET 1"))
+        );
+    }
+
+    @Test
+    @Order(14)
+    public void querySPARQLOptionalUnionMinus() throws Exception {
+        String label = "?s <http://www.w3.org/2004/02/skos/core#prefLabel> ?label .";
+        String height = "?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height .";
+        String date = "?s <http://www.opengis.net/citygml/2.0/core#AbstractCityObject.creationDate> ?date .";
+        int labels = querySPARQL("SELECT ?s WHERE { " + label + " }").size();
+        int heights = querySPARQL("SELECT ?s WHERE { " + height + " }").size();
+        int dates = querySPARQL("SELECT ?s WHERE { " + date + " }").size();
+
+        List<Map<String, String>> optionalHeights = querySPARQL("SELECT ?s ?height WHERE { " + label + " OPTIONAL { " + height + " } }");
+        assertEquals(labels, optionalHeights.size());
+        assertEquals(
+                List.of("12.056"),
+                optionalHeights.stream().filter(bindings -> bindings.containsKey("height")).map(bindings -> bindings.get("height")).toList()
+        );
+
+        List<Map<String, String>> filteredHeights = querySPARQL("SELECT ?s ?height WHERE { " + label + " OPTIONAL { " + height + " FILTER(?height > 100) } }");
+        assertEquals(labels, filteredHeights.size());
+        assertTrue(filteredHeights.stream().noneMatch(bindings -> bindings.containsKey("height")));
+
+        assertEquals(heights + dates, querySPARQL("SELECT ?s WHERE { { " + height + " } UNION { " + date + " } }").size());
+        assertEquals(labels - heights, querySPARQL("SELECT ?s WHERE { " + label + " MINUS { " + height + " } }").size());
+        assertEquals(labels, querySPARQL("SELECT ?s WHERE { " + label + " MINUS { ?other ?p ?height } }").size());
+    }
+
+    @Test
+    @Order(15)
+    public void querySPARQLPropertyPaths() throws Exception {
+        String building = "<https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243>";
+        String buildingPart = "<https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243_1>";
+        String consistsOf = "<http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.consistsOfBuildingPart>";
+        String height = "<http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight>";
+
+        assertEquals(
+                List.of(Map.of("height", "12.056")),
+                querySPARQL("SELECT ?height WHERE { " + building + " " + consistsOf + "/" + height + " ?height }")
+        );
+        assertEquals(2, querySPARQL("SELECT ?x WHERE { " + building + " " + consistsOf + "* ?x }").size());
+        // the cycle building -> part -> building stops the traversal
+        assertEquals(2, querySPARQL("SELECT ?x WHERE { " + building + " (" + consistsOf + "|^" + consistsOf + ")+ ?x }").size());
+        assertEquals(
+                List.of(Map.of("x", building.substring(1, building.length() - 1))),
+                querySPARQL("SELECT ?x WHERE { ?x " + consistsOf + "+ " + buildingPart + " }")
+        );
+        assertEquals(1, querySPARQL("""
+                SELECT ?x WHERE {
+                    GRAPH <https://github.com/VCityTeam/VCity/Instructor#Lyon> { %s %s+ ?x }
+                }
+                """.formatted(building, consistsOf)).size());
+    }
+
+    @Test
+    @Order(16)
+    public void querySPARQLStatistics() throws Exception {
+        String prefLabel = "http://www.w3.org/2004/02/skos/core#prefLabel";
+        String height = "http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight";
+        RDFStatistics statistics = rdfStatisticsComponent.getStatistics();
+
+        assertTrue(statistics.getCardinality(prefLabel, null).orElseThrow().quadCount() > 1);
+        assertEquals(1, statistics.getCardinality(height, null).orElseThrow().quadCount());
+        assertTrue(statistics.getCardinality(height, "https://github.com/VCityTeam/VCity/Instructor#Lyon").isPresent());
+
+        // the selective pattern is joined first, the solutions keep the variables of the query
+        List<Map<String, String>> solutions = querySPARQL("""
+                SELECT * WHERE {
+                    ?s <%s> ?label .
+                    ?s <%s> ?height .
+                }
+                """.formatted(prefLabel, height));
+
+        assertEquals(List.of(Map.of(
+                "s", "https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243_1",
+                "label", "BU_69381AB243_1",
+                "height", "12.056"
+        )), solutions);
+        assertEquals(List.of("s", "label", "height"), List.copyOf(solutions.get(0).keySet()));
+    }
+
+    @Test
+    @Order(17)
+    public void querySPARQLVersionGraphs() throws Exception {
+        List<String> validities = queryRequestedValidity("*")
+                .stream()
+                .map(quad -> new String(quad.getValidity(), StandardCharsets.UTF_8))
+                .toList();
+        int versions = validities.get(0).length();
+        String countQuery = "SELECT (COUNT(*) AS ?count) WHERE { GRAPH <https://github.com/VCityTeam/VCity/%s> { ?s ?p ?o } }";
+
+        for (int version = 0; version < versions; version++) {
+            assertEquals(
+                    Integer.toString(queryRequestedVersion(version).size()),
+                    querySPARQL(countQuery.formatted("Version#" + version)).get(0).get("count")
+            );
+        }
+
+        String validity = validities.get(0);
+        assertEquals(
+                Long.toString(validities.stream().filter(validity::equals).count()),
+                querySPARQL(countQuery.formatted("Validity#" + validity)).get(0).get("count")
+        );
+        assertEquals(
+                Long.toString(validities.stream().filter(quadValidity -> quadValidity.contains("1")).count()),
+                querySPARQL(countQuery.formatted("Version#0-" + (versions - 1))).get(0).get("count")
+        );
+
+        List<Map<String, String>> heights = querySPARQL("""
+                SELECT ?validity ?height WHERE {
+                    GRAPH ?validity { ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height }
+                }
+                """);
+
+        assertEquals(1, heights.size());
+        assertEquals(versions, heights.get(0).get("validity").length());
+        assertEquals(
+                Integer.toString(heights.size()),
+                querySPARQL(countQuery.formatted("Validity#" + heights.get(0).get("validity"))
+                        .replace("?s ?p ?o", "?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?o"))
+                        .get(0).get("count")
+        );
+        // the version is checked by each step of the path
+        assertEquals(1, querySPARQL("""
+                SELECT ?x WHERE {
+                    GRAPH <https://github.com/VCityTeam/VCity/Version#0-%d> {
+                        <https://github.com/VCityTeam/UD-Graph/LYON_1ER_BATI_2015-1_bldg#BU_69381AB243> <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.consistsOfBuildingPart>+ ?x
+                    }
+                }
+                """.formatted(versions - 1)).size());
+    }
+
+    @Test
+    @Order(18)
+    public void queryResultFormats() throws Exception {
+        String query = """
+                SELECT ?s ?height WHERE {
+                    ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height
+                }
+                """;
+        List<Map<String, String>> solutions = querySPARQL(query);
+
+        MvcResult tsvResult = performStreaming(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql")
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept("text/tab-separated-values")
+                .content(query));
+        List<String> tsvLines = tsvResult.getResponse().getContentAsString().lines().toList();
+
+        assertEquals("text/tab-separated-values", tsvResult.getResponse().getContentType());
+        assertEquals("?s\t?height", tsvLines.get(0));
+        assertEquals(solutions.size() + 1, tsvLines.size());
+        assertTrue(tsvLines.get(1).startsWith("<" + solutions.get(0).get("s") + ">\t\"" + solutions.get(0).get("height") + "\""));
+
+        MvcResult csvResult = performStreaming(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql")
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept("text/csv")
+                .content(query));
+        List<String> csvLines = csvResult.getResponse().getContentAsString().lines().toList();
+
+        assertEquals("s,height", csvLines.get(0));
+        assertEquals(solutions.get(0).get("s") + "," + solutions.get(0).get("height"), csvLines.get(1));
+
+        MvcResult thriftResult = performStreaming(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql")
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept(ResultSetLang.RS_Thrift.getHeaderString())
+                .content(query));
+        ResultSet resultSet = ResultSetMgr.read(new ByteArrayInputStream(thriftResult.getResponse().getContentAsByteArray()), ResultSetLang.RS_Thrift);
+
+        assertEquals(List.of("s", "height"), resultSet.getResultVars());
+        assertEquals(solutions.get(0).get("height"), resultSet.next().getLiteral("height").getLexicalForm());
+
+        int version = 1;
+        int quads = queryRequestedVersion(version).size();
+
+        for (Lang lang : List.of(Lang.NQUADS, Lang.RDFTHRIFT, Lang.RDFPROTO)) {
+            MvcResult versionResult = performStreaming(MockMvcRequestBuilders.get("http://localhost:8080/query/version/" + version)
+                    .accept(lang.getHeaderString()));
+            StreamRDFCounting counting = StreamRDFLib.count();
+
+            assertEquals(lang.getHeaderString(), versionResult.getResponse().getContentType());
+            RDFParser.source(new ByteArrayInputStream(versionResult.getResponse().getContentAsByteArray()))
+                    .lang(lang)
+                    .parse(counting);
+            assertEquals(quads, (int) counting.count());
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/version/" + version)
+                        .accept(MediaType.APPLICATION_XML))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    @Order(19)
+    public void queryResultCache() throws Exception {
+        double hits = meterRegistry.get("cache.gets").tag("cache", "query_result").tag("result", "hit").functionCounter().count();
+        List<Map<String, String>> solutions = querySPARQL("SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o }");
+
+        // same algebra, other formatting
+        assertEquals(solutions, querySPARQL("""
+                PREFIX ex: <http://example.org/>
+                SELECT (COUNT(*) AS ?count)
+                WHERE {
+                    ?s ?p ?o .
+                }
+                """));
+        assertEquals(hits + 1, meterRegistry.get("cache.gets").tag("cache", "query_result").tag("result", "hit").functionCounter().count());
+        assertTrue(meterRegistry.get("cache.bytes").tag("cache", "query_result").gauge().value() > 0);
+
+        int version = queryRequestedValidity("*").get(0).getValidity().length;
+        String versionURL = "http://localhost:8080/query/version/" + version;
+        String cachedQuads = performStreaming(MockMvcRequestBuilders.get(versionURL)).getResponse().getContentAsString();
+
+        assertEquals(cachedQuads, performStreaming(MockMvcRequestBuilders.get(versionURL)).getResponse().getContentAsString());
+
+        // the import of a new version empties the cache
+        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/import/remove")
+                        .file(getMultipartFile("classpath:static/remove/LYON_1ER_BATI_2015-remove_bldg.nq")))
+                .andExpect(status().isOk());
+
+        RDFCompleteVersionedQuad[] quads = new ObjectMapper().readValue(
+                performStreaming(MockMvcRequestBuilders.get(versionURL)).getResponse().getContentAsString(),
+                RDFCompleteVersionedQuad[].class
+        );
+
+        assertEquals(queryRequestedVersion(version).size(), quads.length);
+        assertTrue(quads.length < new ObjectMapper().readValue(cachedQuads, RDFCompleteVersionedQuad[].class).length);
+    }
+
+    @Test
+    @Order(20)
+    public void querySPARQLCancellation() throws Exception {
+        double cancelled = meterRegistry.get("query.cancelled").counter().count();
+        AtomicReference<QueryExecution> execution = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // a cross product of the quads, running for minutes
+        Future<?> query = executor.submit(() -> {
+            execution.set(rdfQueryExecutionComponent.open());
+            try {
+                quadQueryService.querySPARQL(
+                        "SELECT (COUNT(*) AS ?count) WHERE { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i . ?j ?k ?l }",
+                        ResultSetLang.RS_JSON
+                ).write(OutputStream.nullOutputStream());
+                return null;
+            } finally {
+                rdfQueryExecutionComponent.close();
+            }
+        });
+
+        try {
+            while (meterRegistry.get("query.running").gauge().value() == 0) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            execution.get().cancel("cancelled by the test");
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> query.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(QueryCancelledException.class, exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(cancelled + 1, meterRegistry.get("query.cancelled").counter().count());
+        assertEquals(0, meterRegistry.get("query.running").gauge().value());
+    }
+
+    @Test
+    @Order(21)
+    public void queryVersionPages() throws Exception {
+        int version = 1;
+        List<String> expectedQuads = queryRequestedVersion(version)
+                .stream()
+                .map(SparqlToSqlApplicationTests::quadToString)
+                .sorted()
+                .toList();
+        List<String> quads = new ArrayList<>();
+        String next = "http://localhost:8080/query/version/" + version + "?limit=50";
+        int pages = 0;
+
+        while (next != null) {
+            MvcResult mvcResult = performStreaming(MockMvcRequestBuilders.get(next));
+            String link = mvcResult.getResponse().getHeader(HttpHeaders.LINK);
+
+            Arrays.stream(new ObjectMapper().readValue(mvcResult.getResponse().getContentAsString(), RDFCompleteVersionedQuad[].class))
+                    .map(SparqlToSqlApplicationTests::quadToString)
+                    .forEach(quads::add);
+            next = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+            pages++;
+        }
+
+        assertEquals((expectedQuads.size() + 49) / 50, pages);
+        assertEquals(expectedQuads, quads.stream().sorted().toList());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/version/" + version + "?after=invalid"))
+                .andExpect(status().isBadRequest());
+        for (String limit : List.of("0", "-1")) {
+            mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/version/" + version + "?limit=" + limit))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    @Order(22)
+    public void explainSPARQL() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql/explain")
                         .contentType(MediaType.TEXT_PLAIN)
-                        .content(new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8)))
+                        .content("""
+                                SELECT ?s ?height WHERE {
+                                    ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height
+                                }
+                                """))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode explanation = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        List<String> plan = new ArrayList<>();
+        List<String> phases = new ArrayList<>();
+        explanation.get("plan").forEach(line -> plan.add(line.asText()));
+        explanation.get("timings").fieldNames().forEachRemaining(phases::add);
+
+        assertTrue(explanation.get("algebra").asText().contains("quadpattern"));
+        assertTrue(explanation.get("sql").asText().contains("versioned_quad"));
+        assertEquals(1, explanation.get("parameters").size());
+        assertTrue(explanation.get("parameters").get(0).isInt());
+        assertTrue(plan.stream().anyMatch(line -> line.contains("actual time")));
+        assertTrue(plan.stream().anyMatch(line -> line.startsWith("Execution Time")));
+        assertEquals(List.of("parse", "algebra", "translate", "resolve", "execute"), phases);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql/explain")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("SELECT ?s WHERE {"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(23)
+    public void queryVersionDiff() throws Exception {
+        int fromVersion = 0;
+        int toVersion = 1;
+        Set<String> fromQuads = new HashSet<>();
+        Set<String> toQuads = new HashSet<>();
+        queryRequestedVersion(fromVersion).forEach(quad -> fromQuads.add(String.join(" ", quad.getS(), quad.getP(), quad.getO(), quad.getNamedGraph())));
+        queryRequestedVersion(toVersion).forEach(quad -> toQuads.add(String.join(" ", quad.getS(), quad.getP(), quad.getO(), quad.getNamedGraph())));
+        long added = toQuads.stream().filter(quad -> !fromQuads.contains(quad)).count();
+        long removed = fromQuads.stream().filter(quad -> !toQuads.contains(quad)).count();
+        String diffURL = "http://localhost:8080/query/diff/" + fromVersion + "/" + toVersion;
+
+        MvcResult patchResult = performStreaming(MockMvcRequestBuilders.get(diffURL));
+        List<String> rows = patchResult.getResponse().getContentAsString().lines().toList();
+
+        assertEquals("application/rdf-patch", patchResult.getResponse().getContentType());
+        assertTrue(added + removed > 0);
+        assertEquals(added, rows.stream().filter(row -> row.startsWith("A ")).count());
+        assertEquals(removed, rows.stream().filter(row -> row.startsWith("D ")).count());
+        assertEquals(added + removed, rows.size());
+
+        for (String set : List.of("added", "removed")) {
+            MvcResult setResult = performStreaming(MockMvcRequestBuilders.get(diffURL + "?set=" + set));
+            StreamRDFCounting counting = StreamRDFLib.count();
+
+            RDFParser.source(new ByteArrayInputStream(setResult.getResponse().getContentAsByteArray()))
+                    .lang(Lang.NQUADS)
+                    .parse(counting);
+            assertEquals(set.equals("added") ? added : removed, counting.count());
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.get(diffURL + "?set=changed"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(24)
+    public void switchValidityStorage() throws Exception {
+        String validities = """
+                SELECT id_subject, id_property, id_object, id_named_graph,
+                    coalesce(validity_ranges, validity_to_ranges(validity))::text AS validity
+                    FROM versioned_quad
+                    ORDER BY id_subject, id_property, id_object, id_named_graph
+                """;
+        // Each storage only writes its own column
+        String bothOrNoColumns = "SELECT count(*) FROM versioned_quad WHERE (validity IS NULL) = (validity_ranges IS NULL)";
+        List<String> migrations = validityStorage instanceof RDFIntervalValidityStorage
+                ? List.of("validity-storage-to-bitstring.sql", "validity-storage-to-interval.sql")
+                : List.of("validity-storage-to-interval.sql", "validity-storage-to-bitstring.sql");
+        List<Map<String, Object>> expected = jdbcTemplate.queryForList(validities);
+
+        assertEquals(0L, jdbcTemplate.queryForObject(bothOrNoColumns, Long.class));
+
+        // Switched to the other storage, then back
+        for (String migration : migrations) {
+            String script = new String(resourceLoader.getResource("classpath:migration/" + migration).getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+            Arrays.stream(script.replaceAll("(?m)^--.*$", "").split(";"))
+                    .map(String::strip)
+                    .filter(statement -> !statement.isEmpty())
+                    .forEach(jdbcTemplate::update);
+
+            assertEquals(0L, jdbcTemplate.queryForObject(bothOrNoColumns, Long.class));
+            assertEquals(expected, jdbcTemplate.queryForList(validities));
+        }
+    }
+
+    @Test
+    @Order(25)
+    public void querySPARQLUnsupported() throws Exception {
+        for (String query : List.of("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }", "SELECT ?s WHERE {")) {
+            mockMvc.perform(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content(query))
+                    .andExpect(request().asyncNotStarted())
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    @Order(26)
+    public void querySPARQLInvalidDates() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.multipart("http://localhost:8080/import/add")
+                        .file(getMultipartFile("classpath:static/add/dates.nq")))
+                .andExpect(status().isOk());
+
+        String dateQuery = """
+                SELECT ?s WHERE {
+                    GRAPH ?g { ?s <http://example.org/date> ?date }
+                    FILTER(?date %s "%s"^^<http://www.w3.org/2001/XMLSchema#date>)
+                }""";
+
+        // -0044 can't be read by PostgreSQL: the comparisons are errors, discarding the solution
+        assertEquals(List.of(Map.of("s", "http://example.org/event/2")), querySPARQL(dateQuery.formatted("<", "2000-01-01")));
+        assertEquals(2, querySPARQL(dateQuery.formatted(">", "1000-01-01")).size());
+        assertEquals(0, querySPARQL(dateQuery.formatted("<=", "-0044-03-15")).size());
+        assertNull(jdbcTemplate.queryForObject("SELECT try_cast_timestamptz('2021-02-30')", Object.class));
+    }
+
+    @Test
+    @Order(27)
+    public void querySPARQLFilterPlanCache() throws Exception {
+        String heightQuery = """
+                SELECT ?s WHERE {
+                    ?s <http://www.opengis.net/citygml/building/2.0/building#AbstractBuilding.measuredHeight> ?height .
+                    ?s <http://www.w3.org/2004/02/skos/core#prefLabel> ?label .
+                    FILTER(?height > %s && ?label != "%s")
+                }
+                """;
+        double planHits = meterRegistry.get("cache.gets").tag("cache", "sparql_plan").tag("result", "hit").functionCounter().count();
+
+        assertEquals(1, querySPARQL(heightQuery.formatted("10", "none")).size());
+        assertEquals(0, querySPARQL(heightQuery.formatted("12.5", "it's")).size());
+        assertEquals(planHits + 1, meterRegistry.get("cache.gets").tag("cache", "sparql_plan").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    @Order(28)
+    public void querySPARQLAdmission() throws Exception {
+        double rejected = meterRegistry.get("query.rejected").counter().count();
+        List<MvcResult> requests = new ArrayList<>();
+        boolean queued = false;
+
+        // more cross products (running for minutes) than slots: the last ones wait for a slot, then are rejected
+        for (int i = 0; i < maxConcurrent + 2; i++) {
+            requests.add(mockMvc.perform(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("SELECT (COUNT(*) AS ?count) WHERE { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i . ?j ?k ?l }"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn());
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (meterRegistry.get("query.rejected").counter().count() < rejected + 2 && System.currentTimeMillis() < deadline) {
+            queued |= meterRegistry.get("query.queued").gauge().value() > 0;
+            Thread.sleep(10);
+        }
+        for (MvcResult mvcResult : requests) {
+            if (mvcResult.getRequest().getAttribute(QueryExecution.class.getName()) instanceof QueryExecution execution) {
+                execution.cancel("cancelled by the test");
+            }
+        }
+
+        List<MvcResult> rejectedRequests = new ArrayList<>();
+        int cancelledRequests = 0;
+        for (MvcResult mvcResult : requests) {
+            Object result = mvcResult.getAsyncResult(10000);
+            if (result instanceof QueryRejectedException) {
+                rejectedRequests.add(mvcResult);
+            } else if (result instanceof QueryCancelledException) {
+                cancelledRequests++;
+            }
+        }
+
+        assertTrue(queued);
+        assertEquals(rejected + 2, meterRegistry.get("query.rejected").counter().count());
+        assertEquals(2, rejectedRequests.size());
+        assertEquals(maxConcurrent, cancelledRequests);
+        assertEquals(0, meterRegistry.get("query.running").gauge().value());
+        mockMvc.perform(asyncDispatch(rejectedRequests.get(0)))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    @Order(29)
+    public void explainSPARQLAdmission() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent);
+        List<Future<?>> slots = new ArrayList<>();
+
+        try {
+            // every slot is held: the explanation and the page wait for queue-timeout then are rejected
+            for (int i = 0; i < maxConcurrent; i++) {
+                slots.add(executor.submit(() -> rdfQueryExecutionComponent.execute(() -> {
+                    try {
+                        return release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })));
+            }
+            while (meterRegistry.get("query.running").gauge().value() < maxConcurrent) {
+                Thread.sleep(10);
+            }
+
+            mockMvc.perform(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql/explain")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("SELECT ?s WHERE { ?s ?p ?o }"))
+                    .andExpect(status().isServiceUnavailable());
+            mockMvc.perform(MockMvcRequestBuilders.get("http://localhost:8080/query/version/0?limit=10"))
+                    .andExpect(status().isServiceUnavailable());
+        } finally {
+            release.countDown();
+            for (Future<?> slot : slots) {
+                slot.get(10, TimeUnit.SECONDS);
+            }
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, meterRegistry.get("query.running").gauge().value());
+    }
+
+    /**
+     * @return The value bound to each variable, for each solution of the SPARQL JSON results
+     */
+    private List<Map<String, String>> querySPARQL(String query) throws Exception {
+        MvcResult mvcResult = performStreaming(MockMvcRequestBuilders.post("http://localhost:8080/query/sparql")
+                .contentType(MediaType.TEXT_PLAIN)
+                .content(query));
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        List<Map<String, String>> solutions = new ArrayList<>();
+
+        assertEquals("application/sparql-results+json", mvcResult.getResponse().getContentType());
+        for (JsonNode binding : results.get("results").get("bindings")) {
+            Map<String, String> solution = new LinkedHashMap<>();
+            results.get("head").get("vars").forEach(var -> {
+                if (binding.has(var.asText())) {
+                    solution.put(var.asText(), binding.get(var.asText()).get("value").asText());
+                }
+            });
+            solutions.add(solution);
+        }
+
+        return solutions;
+    }
+
+    /**
+     * Waits for the end of the streamed response
+     */
+    /**
+     * @param requestedValidity The validity bit string (<code>*</code> for all the quads)
+     * @return The quads with the validity, streamed from the database
+     */
+    private List<RDFCompleteVersionedQuad> queryRequestedValidity(String requestedValidity) {
+        List<RDFCompleteVersionedQuad> quads = new ArrayList<>();
+
+        if (requestedValidity.equals("*")) {
+            rdfVersionedQuadComponent.findAll(quads::add);
+        } else {
+            rdfVersionedQuadComponent.findAllByValidity(requestedValidity, quads::add);
+        }
+
+        return quads;
+    }
+
+    /**
+     * @param requestedVersion The version index
+     * @return The quads valid in the version, streamed from the database
+     */
+    private List<RDFCompleteVersionedQuad> queryRequestedVersion(int requestedVersion) {
+        List<RDFCompleteVersionedQuad> quads = new ArrayList<>();
+        rdfVersionedQuadComponent.findAllByVersion(requestedVersion, quads::add);
+
+        return quads;
+    }
+
+    private MvcResult performStreaming(RequestBuilder requestBuilder) throws Exception {
+        MvcResult mvcResult = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andReturn();
-        // TODO : Ajouter les tests sur le résultat retourné lorsque le parser SPARQL sera réalisé
+    }
+
+    private MockMultipartFile getMultipartFile(String location) throws Exception {
+        Resource resource = resourceLoader.getResource(location);
+
+        return new MockMultipartFile(
+                "files",
+                resource.getFilename(),
+                MediaType.TEXT_PLAIN_VALUE,
+                resource.getInputStream().readAllBytes()
+        );
+    }
+
+    private static String quadToString(RDFCompleteVersionedQuad quad) {
+        return String.join(" ", quad.getS(), quad.getP(), quad.getO(), quad.getNamedGraph(), new String(quad.getValidity(), StandardCharsets.UTF_8));
     }
 }